@@ -0,0 +1,105 @@
+package klab.app;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Admission control for searches received from neighbors. The node is overloaded when too many messages wait for a
+ * handler or messages take too long from arrival to completion. While overloaded the controller raises a TTL cutoff
+ * step by step and sheds received searches at or below it, so the searches with the least distance left to travel
+ * go first; once the load falls the cutoff steps back down. Searches sent by this node and responses never pass
+ * through the controller, so they are not shed.
+ *
+ * @version 1.0
+ */
+
+public class AdmissionController {
+    /**
+     * Weight of the newest sample in the latency average
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * Nanoseconds between cutoff changes
+     */
+    private static final long ADJUST_PERIOD = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Multiple of the queue limit at which every received search is shed
+     */
+    private static final int HARD_FACTOR = 4;
+
+    /**
+     * Largest TTL a search can carry
+     */
+    private static final int MAX_TTL = 255;
+
+    private final IntSupplier depth;
+    private final int maxDepth;
+    private final long targetNanos;
+    private final NodeMetrics metrics;
+    private double latency; //average nanoseconds from arrival to completion
+    private int cutoff; //received searches with a TTL at or below the cutoff are shed
+    private long lastAdjust = System.nanoTime();
+
+    /**
+     * Constructor for AdmissionController
+     * @param depth supplies the number of messages waiting for a handler
+     * @param maxDepth waiting messages above which the node is overloaded
+     * @param targetMillis handling latency above which the node is overloaded
+     * @param metrics counters for shed searches
+     */
+    public AdmissionController(IntSupplier depth, int maxDepth, long targetMillis, NodeMetrics metrics) {
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Decide whether a search received from a neighbor is handled, counting it if it is shed
+     * @param ttl remaining TTL of the search
+     * @return true if the search is to be handled, false if it is shed
+     */
+    public boolean admit(int ttl) {
+        int waiting = depth.getAsInt();
+        boolean admitted;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long periods = (now - lastAdjust) / ADJUST_PERIOD;
+            if (periods > 0) {
+                lastAdjust = now;
+                //the latency average is stale once nothing is waiting
+                boolean overloaded = waiting >= maxDepth || (waiting > 0 && latency >= targetNanos);
+                //the cutoff rises one step at a time but falls by every period that passed without searches
+                cutoff = overloaded ? Math.min(MAX_TTL, cutoff + 1) : (int) Math.max(0, cutoff - periods);
+            }
+            admitted = waiting < maxDepth * HARD_FACTOR && ttl > cutoff;
+        }
+        if (!admitted) {
+            metrics.shedSearches.increment();
+        }
+        return admitted;
+    }
+
+    /**
+     * Add the time a message took from arrival until its handler finished
+     * @param nanos handling latency
+     */
+    public synchronized void record(long nanos) {
+        latency = latency == 0 ? nanos : latency + ALPHA * (nanos - latency);
+    }
+
+    /**
+     * Returns a String representation of the load and the current cutoff
+     *
+     * @return String representation
+     */
+
+    @Override
+    public synchronized String toString() {
+        return "Waiting messages: " + depth.getAsInt() + System.lineSeparator()
+                + "Handling latency: " + TimeUnit.NANOSECONDS.toMillis((long) latency) + " ms" + System.lineSeparator()
+                + "Shedding searches with TTL <= " + cutoff + System.lineSeparator();
+    }
+}
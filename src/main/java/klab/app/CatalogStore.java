@@ -0,0 +1,181 @@
+package klab.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * File holding the entries of a file catalog so a restarted node can answer searches before it has looked at the
+ * shared directory. Loading maps the file read-only and only finds where each entry starts; entries are decoded when
+ * they are read. Saving writes a new file and moves it over the old one, and on platforms that refuse to replace a
+ * mapped file the loaded catalog is mapped from a private copy so the next save can still replace it. The file starts with a magic number, a version and the canonical path of the
+ * directory, followed by the entry count and one record per file: size, modification time, file ID and name.
+ *
+ * @version 1.0
+ */
+
+public final class CatalogStore {
+    /**
+     * Magic number identifying a catalog file
+     */
+    private static final int MAGIC = 0x4B4C4958;
+
+    /**
+     * Version of the catalog file format
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Size of the fixed part of an entry (size, modification time, file ID and name length)
+     */
+    private static final int ENTRY_FIXED = Long.BYTES + Long.BYTES + Integer.BYTES + Short.BYTES;
+
+    /**
+     * True if the platform refuses to replace or delete a file while it is mapped
+     */
+    private static final boolean LOCKS_MAPPINGS = System.getProperty("os.name", "").startsWith("Windows");
+
+    /**
+     * Constructor for CatalogStore
+     */
+    private CatalogStore() {}
+
+    /**
+     * Write the files of an index, replacing any previous catalog file atomically
+     * @param path catalog file
+     * @param directory shared directory
+     * @param files indexed files
+     * @throws IOException if I/O problem
+     */
+    public static void save(Path path, File directory, List<IndexedFile> files) throws IOException {
+        byte[] dir = directory.getCanonicalPath().getBytes(StandardCharsets.UTF_8);
+        byte[][] names = new byte[files.size()][];
+        long size = Integer.BYTES * 3L + Short.BYTES + dir.length;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = files.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            size += ENTRY_FIXED + names[i].length;
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(Math.toIntExact(size));
+            buf.putInt(MAGIC).putInt(VERSION).putShort((short) dir.length).put(dir).putInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                IndexedFile f = files.get(i);
+                buf.putLong(f.getSize()).putLong(f.getLastModified()).putInt(f.getFileIDValue())
+                        .putShort((short) names[i].length).put(names[i]);
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Map the entries of a catalog file written for a directory. The returned list decodes an entry each time it is
+     * read, so loading costs one pass over the entry lengths however many files the catalog holds.
+     * @param path catalog file
+     * @param directory shared directory
+     * @return recorded files in the order they were saved
+     * @throws IOException if the file is missing, corrupt or was written for another directory
+     */
+    public static List<IndexedFile> load(Path path, File directory) throws IOException {
+        Path mapped = path;
+        if (LOCKS_MAPPINGS) {
+            mapped = path.resolveSibling(path.getFileName() + ".loaded");
+            Files.copy(path, mapped, StandardCopyOption.REPLACE_EXISTING);
+        }
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(mapped, StandardOpenOption.READ)) {
+            //the mapping stays valid after the channel is closed
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("Not a catalog file: " + path);
+            }
+            if (!directory.getCanonicalPath().equals(readString(buf))) {
+                throw new IOException("Catalog file is for another directory: " + path);
+            }
+            int count = buf.getInt();
+            if (count < 0 || (long) count * ENTRY_FIXED > buf.remaining()) {
+                throw new IOException("Catalog file is truncated: " + path);
+            }
+            int[] offsets = new int[count];
+            int position = buf.position();
+            for (int i = 0; i < count; i++) {
+                offsets[i] = position;
+                position += ENTRY_FIXED + (buf.getShort(position + ENTRY_FIXED - Short.BYTES) & 0xFFFF);
+            }
+            if (position > buf.limit()) {
+                throw new IOException("Catalog file is truncated: " + path);
+            }
+            return new MappedEntries(buf, offsets, directory);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Catalog file is truncated: " + path, e);
+        }
+    }
+
+    /**
+     * Entries of a mapped catalog file, decoded when read
+     */
+    private static final class MappedEntries extends AbstractList<IndexedFile> implements RandomAccess {
+        private final ByteBuffer buf;
+        private final int[] offsets;
+        private final File directory;
+
+        /**
+         * Constructor for MappedEntries
+         * @param buf mapped catalog file
+         * @param offsets position of each entry
+         * @param directory shared directory
+         */
+        MappedEntries(ByteBuffer buf, int[] offsets, File directory) {
+            this.buf = buf;
+            this.offsets = offsets;
+            this.directory = directory;
+        }
+
+        @Override
+        public IndexedFile get(int index) {
+            //a duplicate has its own position, so concurrent readers do not disturb each other
+            ByteBuffer entry = buf.duplicate().position(offsets[index]);
+            long size = entry.getLong();
+            long lastModified = entry.getLong();
+            byte[] fileID = new byte[Integer.BYTES];
+            entry.get(fileID);
+            return new IndexedFile(new File(directory, readString(entry)), size, lastModified, fileID);
+        }
+
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+    }
+
+    /**
+     * Read a string preceded by its length
+     * @param buf file contents
+     * @return string
+     */
+    private static String readString(ByteBuffer buf) {
+        byte[] b = new byte[buf.getShort() & 0xFFFF];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,140 @@
+package klab.app;
+
+import klab.serialization.BadAttributeValueException;
+import klab.serialization.Frame;
+import klab.serialization.MessageDecoder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import static klab.app.Node.logger;
+
+/**
+ * Peer connected through a non-blocking channel owned by a SelectorLoop
+ *
+ * @version 1.0
+ */
+public class ChannelPeer extends Peer {
+    /**
+     * Size of the read buffer
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final SocketChannel channel;
+    private final SelectorLoop loop;
+    private ByteBuffer current; //frame partly written (selector thread only)
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final MessageDecoder decoder = new MessageDecoder();
+    private SelectionKey key;
+
+    /**
+     * Constructor for the ChannelPeer class
+     * @param channel non-blocking socket channel
+     * @param loop selector loop owning the channel
+     */
+    public ChannelPeer(SocketChannel channel, SelectorLoop loop) {
+        super(channel.socket(), null, null);
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    /**
+     * Ask the selector loop to write the queued frames
+     */
+    @Override
+    protected void queued() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            loop.execute(this::enableWrite);
+        }
+    }
+
+    /**
+     * Close the peer and its channel
+     */
+    @Override
+    public void close() {
+        getQueue().close();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to close channel: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Set the selection key of the channel
+     * @param key selection key
+     */
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Read available bytes and collect every frame they complete
+     * @return complete frames
+     * @throws IOException if I/O problem or end of stream
+     */
+    List<Frame> read() throws IOException {
+        if (channel.read(readBuffer) == -1) {
+            throw new EOFException("Neighbor closed connection");
+        }
+        readBuffer.flip();
+        List<Frame> frames = new ArrayList<>();
+        while (readBuffer.hasRemaining()) {
+            try {
+                Frame frame = decoder.decodeFrame(readBuffer);
+                if (frame != null) {
+                    frames.add(frame);
+                }
+            } catch (BadAttributeValueException e) {
+                logger.log(Level.WARNING, "Invalid message: " + e.getMessage());
+            }
+        }
+        readBuffer.clear();
+        return frames;
+    }
+
+    /**
+     * Write queued frames until the queue is empty or the socket buffer is full
+     * @throws IOException if I/O problem
+     */
+    void write() throws IOException {
+        while (true) {
+            if (current == null) {
+                Frame frame = getQueue().poll();
+                if (frame == null) {
+                    break;
+                }
+                current = frame.asByteBuffer();
+            }
+            channel.write(current);
+            if (current.hasRemaining()) {
+                return;
+            }
+            current = null;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        writeScheduled.set(false);
+        //a sender may have queued a frame after the queue was drained
+        if (!getQueue().isEmpty() && writeScheduled.compareAndSet(false, true)) {
+            enableWrite();
+        }
+    }
+
+    /**
+     * Register interest in write readiness
+     */
+    private void enableWrite() {
+        if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package klab.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+
+import static klab.app.Node.logger;
+
+/**
+ * File IDs derived from file contents: the first four bytes of the SHA-256 digest of the file, so identical files
+ * have the same ID on every node
+ *
+ * @version 1.0
+ */
+
+public final class ContentID {
+    /**
+     * Digest algorithm
+     */
+    private static final String ALGORITHM = "SHA-256";
+
+    /**
+     * Length of a file ID
+     */
+    private static final int ID_LENGTH = 4;
+
+    /**
+     * Bytes read at a time while hashing
+     */
+    private static final int READ_SIZE = 65536;
+
+    /**
+     * Files hashed by one task without splitting
+     */
+    private static final int SEQUENTIAL_FILES = 4;
+
+    /**
+     * Constructor for ContentID
+     */
+    private ContentID() {}
+
+    /**
+     * Compute the file ID of a file
+     * @param f file
+     * @return file ID
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] of(File f) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unable to hash file", e);
+        }
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(READ_SIZE);
+            while (channel.read(buf) != -1) {
+                buf.flip();
+                digest.update(buf);
+                buf.clear();
+            }
+        }
+        return Arrays.copyOf(digest.digest(), ID_LENGTH);
+    }
+
+    /**
+     * Check if a file has the contents named by a file ID
+     * @param f file
+     * @param fileID hex file ID
+     * @return true if the contents hash to the file ID, false otherwise
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean matches(File f, String fileID) throws IOException {
+        return String.format("%08X", ByteBuffer.wrap(of(f)).getInt()).equalsIgnoreCase(fileID);
+    }
+
+    /**
+     * Index files, hashing them in parallel on the common fork/join pool
+     * @param files files to index
+     * @return indexed files in the same order, null for files that could not be read
+     */
+    public static IndexedFile[] index(List<File> files) {
+        IndexedFile[] indexed = new IndexedFile[files.size()];
+        ForkJoinPool.commonPool().invoke(new IndexTask(files, indexed, 0, indexed.length));
+        return indexed;
+    }
+
+    /**
+     * Task indexing a range of files, splitting it in half until it is small
+     */
+    private static final class IndexTask extends RecursiveAction {
+        /**
+         * Serial version ID
+         */
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> files;
+        private final IndexedFile[] indexed;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructor for IndexTask
+         * @param files files to index
+         * @param indexed array receiving the indexed files
+         * @param from first file of the range
+         * @param to end of the range (exclusive)
+         */
+        IndexTask(List<File> files, IndexedFile[] indexed, int from, int to) {
+            this.files = files;
+            this.indexed = indexed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_FILES) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        indexed[i] = new IndexedFile(files.get(i));
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Unable to index " + files.get(i) + ": " + e.getMessage());
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new IndexTask(files, indexed, from, mid), new IndexTask(files, indexed, mid, to));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package klab.app;
+
+/**
+ * Request line sent to a download server. The original form is just the file ID; the ranged form adds the offset
+ * of the first byte wanted and optionally the number of bytes, and is answered with the length of the reply.
+ * <pre>
+ *     &lt;fileID&gt;\n
+ *     &lt;fileID&gt; &lt;offset&gt; [&lt;length&gt;]\n
+ * </pre>
+ *
+ * @version 1.0
+ */
+
+public final class DownloadRequest {
+    private final String fileID;
+    private final long offset;
+    private final long length; //-1 for the rest of the file
+    private final boolean ranged;
+
+    /**
+     * Constructor for a request for a whole file in the original form
+     * @param fileID hex file ID
+     */
+    public DownloadRequest(String fileID) {
+        this(fileID, 0, -1, false);
+    }
+
+    /**
+     * Constructor for a ranged request
+     * @param fileID hex file ID
+     * @param offset offset of the first byte
+     * @param length number of bytes (-1 for the rest of the file)
+     * @throws IllegalArgumentException if offset is negative or length is less than -1
+     */
+    public DownloadRequest(String fileID, long offset, long length) {
+        this(fileID, offset, length, true);
+    }
+
+    /**
+     * Constructor for DownloadRequest
+     * @param fileID hex file ID
+     * @param offset offset of the first byte
+     * @param length number of bytes (-1 for the rest of the file)
+     * @param ranged true if the request is in the ranged form
+     * @throws IllegalArgumentException if any parameter is invalid
+     */
+    private DownloadRequest(String fileID, long offset, long length, boolean ranged) {
+        if (fileID == null || fileID.isEmpty() || fileID.indexOf(' ') >= 0) {
+            throw new IllegalArgumentException("Bad File ID: " + fileID);
+        }
+        if (offset < 0 || length < -1) {
+            throw new IllegalArgumentException("Bad Range: " + offset + " " + length);
+        }
+        this.fileID = fileID;
+        this.offset = offset;
+        this.length = length;
+        this.ranged = ranged;
+    }
+
+    /**
+     * Parse a request line
+     * @param line request line without its newline
+     * @return request
+     * @throws IllegalArgumentException if the line is not a valid request
+     */
+    public static DownloadRequest parse(String line) {
+        String[] parts = line.split(" ", -1);
+        try {
+            switch (parts.length) {
+                case 1:
+                    return new DownloadRequest(parts[0]);
+                case 2:
+                    return new DownloadRequest(parts[0], Long.parseLong(parts[1]), -1);
+                case 3:
+                    return new DownloadRequest(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                default:
+                    throw new IllegalArgumentException("Bad Request: " + line);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad Request: " + line);
+        }
+    }
+
+    /**
+     * Get the request line
+     * @return request line including its newline
+     */
+    public String encode() {
+        if (!ranged) {
+            return fileID + "\n";
+        }
+        return fileID + " " + offset + (length < 0 ? "" : " " + length) + "\n";
+    }
+
+    /**
+     * Get the file ID
+     * @return hex file ID
+     */
+    public String getFileID() {
+        return fileID;
+    }
+
+    /**
+     * Get the offset of the first byte
+     * @return offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the number of bytes requested
+     * @return number of bytes or -1 for the rest of the file
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Check if the request is in the ranged form, whose reply carries its length
+     * @return true if ranged, false otherwise
+     */
+    public boolean isRanged() {
+        return ranged;
+    }
+
+    /**
+     * Returns the request line
+     * @return request line without its newline
+     */
+    @Override
+    public String toString() {
+        return encode().trim();
+    }
+}
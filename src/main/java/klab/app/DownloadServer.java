@@ -0,0 +1,515 @@
+package klab.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static klab.app.Node.logger;
+
+/**
+ * Download server driving every download connection from a single selector thread. Request lines are collected as
+ * bytes arrive, so a slow or idle client only costs its buffer, and files are streamed with transferTo whenever the
+ * socket can take more, within the upload rate limits. Slots and queueing are left to the UploadScheduler.
+ * <p>
+ * Replies to ranged requests carry their length, so after one the connection stays open for the next request, and
+ * a client may pipeline several requests without waiting for each reply. Replies to requests in the original form
+ * end with the connection.
+ *
+ * @version 1.0
+ */
+
+public class DownloadServer implements Runnable {
+    /**
+     * Longest request line accepted
+     */
+    private static final int MAX_REQUEST = 1024;
+
+    /**
+     * Milliseconds between checks for clients that have not sent a request
+     */
+    private static final long SWEEP_PERIOD = 1000;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final DownloadService service;
+    private final FileCatalog catalog;
+    private final long requestTimeout; //nanoseconds a client may take to send its next request
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private long nextSweep;
+
+    /**
+     * Task to run on the selector thread once a time has passed
+     * @param at time in System.nanoTime units
+     * @param task task to run
+     */
+    private record Timer(long at, Runnable task) implements Comparable<Timer> {
+        @Override
+        public int compareTo(Timer o) {
+            return Long.compare(at, o.at);
+        }
+    }
+
+    /**
+     * Constructor for the DownloadServer
+     * @param serverChannel channel accepting download connections
+     * @param service download service providing the upload scheduler, upload threads and rate limit
+     * @param catalog catalog of the shared directory
+     * @throws IOException if I/O problem
+     */
+    public DownloadServer(ServerSocketChannel serverChannel, DownloadService service, FileCatalog catalog)
+            throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = serverChannel;
+        this.service = service;
+        this.catalog = catalog;
+        this.requestTimeout = TimeUnit.MILLISECONDS.toNanos(NodeConfig.getDownloadRequestTimeout());
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Run the event loop
+     */
+    @Override
+    public void run() {
+        nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SWEEP_PERIOD);
+        while (serverChannel.isOpen()) {
+            try {
+                long now = System.nanoTime();
+                long wake = nextSweep;
+                if (!timers.isEmpty()) {
+                    wake = Math.min(wake, timers.peek().at());
+                }
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wake - now)));
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                now = System.nanoTime();
+                while (!timers.isEmpty() && timers.peek().at() - now <= 0) {
+                    timers.poll().task().run();
+                }
+                if (now - nextSweep >= 0) {
+                    sweep(now);
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_PERIOD);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Unable to communicate: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Run a task on the event loop thread
+     * @param task task to run
+     */
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Handle a ready key
+     * @param key selection key
+     */
+    private void handle(SelectionKey key) {
+        if (key.isAcceptable()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    Upload upload = new Upload(channel);
+                    upload.key = channel.register(selector, SelectionKey.OP_READ, upload);
+                    logger.info("Download Connection accepted" + channel.socket().getInetAddress() + ":"
+                            + channel.socket().getPort());
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Unable to communicate: " + e.getMessage());
+            }
+            return;
+        }
+        Upload upload = (Upload) key.attachment();
+        try {
+            if (key.isReadable()) {
+                upload.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                upload.write();
+            }
+        } catch (IOException e) {
+            logger.info("Error uploading file: " + e.getMessage());
+            upload.close();
+        }
+    }
+
+    /**
+     * Close connections that have not sent their next request in time
+     * @param now current time
+     */
+    private void sweep(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Upload upload && upload.waiting
+                    && now - upload.idleSince >= requestTimeout) {
+                logger.info("Download request timed out: " + upload.channel.socket().getInetAddress());
+                upload.close();
+            }
+        }
+    }
+
+    /**
+     * One download connection: collects each request line, waits for a slot, then streams the reply
+     */
+    private final class Upload implements UploadScheduler.Job {
+        private final SocketChannel channel;
+        private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST); //request bytes not yet handled
+        private final Deque<ByteBuffer> control = new ArrayDeque<>(); //status lines waiting to be written
+        private final TokenBucket peerLimit;
+        private SelectionKey key;
+        private long idleSince = System.nanoTime();
+        private boolean waiting = true; //true while waiting for the next request line
+        private boolean ranged;
+        private boolean started; //true once a slot has been granted
+        private boolean closeWhenWritten;
+        private boolean nextWhenWritten; //true once an error reply leaves the connection open
+        private boolean writeDelayed; //true while waiting for the rate limit
+        private FileChannel file;
+        private long position;
+        private long remaining;
+        private Runnable done;
+
+        /**
+         * Constructor for Upload
+         * @param channel connection
+         */
+        Upload(SocketChannel channel) {
+            this.channel = channel;
+            long rate = NodeConfig.getPeerUploadRate();
+            this.peerLimit = new TokenBucket(rate, DownloadService.burst(rate));
+        }
+
+        /**
+         * Read request bytes until the next request line is complete
+         * @throws IOException if I/O problem or end of stream
+         */
+        void read() throws IOException {
+            if (!waiting) {
+                return;
+            }
+            if (channel.read(request) == -1) {
+                if (request.position() > 0) {
+                    throw new IOException("Client closed connection");
+                }
+                //the client has no more requests
+                close();
+                return;
+            }
+            next();
+        }
+
+        /**
+         * Handle the next buffered request line, or wait for more bytes if it is not complete
+         * @throws IOException if I/O problem
+         */
+        private void next() throws IOException {
+            byte[] b = request.array();
+            for (int i = 0; i < request.position(); i++) {
+                if (b[i] == '\n') {
+                    String line = new String(b, 0, i, StandardCharsets.US_ASCII);
+                    //keep any pipelined requests after this one
+                    System.arraycopy(b, i + 1, b, 0, request.position() - i - 1);
+                    request.position(request.position() - i - 1);
+                    waiting = false;
+                    key.interestOps(0);
+                    handleRequest(line);
+                    return;
+                }
+            }
+            if (!request.hasRemaining()) {
+                waiting = false;
+                key.interestOps(0);
+                fail("Bad Request: request too long", true);
+                return;
+            }
+            if (!waiting) {
+                waiting = true;
+                idleSince = System.nanoTime();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /**
+         * Look up the requested file and open it on an upload thread, as opening can wait on the disk
+         * @param line request line
+         */
+        private void handleRequest(String line) {
+            logger.info("Downloading file: " + line);
+            DownloadRequest req;
+            try {
+                req = DownloadRequest.parse(line);
+            } catch (IllegalArgumentException e) {
+                fail(e.getMessage(), true);
+                return;
+            }
+            ranged = req.isRanged();
+            IndexedFile shared = DownloadService.findFile(catalog, req.getFileID());
+            if (shared == null) {
+                fail("Bad File ID: " + req.getFileID(), !ranged);
+                return;
+            }
+            service.getUploads().execute(() -> {
+                try {
+                    FileChannel opened = FileChannel.open(shared.getFile().toPath(), StandardOpenOption.READ);
+                    try {
+                        long size = opened.size();
+                        execute(() -> opened(req, shared, opened, size));
+                    } catch (IOException e) {
+                        opened.close();
+                        throw e;
+                    }
+                } catch (IOException e) {
+                    logger.info("Error uploading file: " + e.getMessage());
+                    execute(this::close);
+                }
+            });
+        }
+
+        /**
+         * Check the requested range of an opened file and queue the upload for a slot (selector thread)
+         * @param req request
+         * @param shared requested file
+         * @param opened open file
+         * @param size size of the file when opened
+         */
+        private void opened(DownloadRequest req, IndexedFile shared, FileChannel opened, long size) {
+            file = opened;
+            if (!channel.isOpen()) {
+                close();
+                return;
+            }
+            if (req.getOffset() > size) {
+                fail("Bad Range: " + req, !ranged);
+                return;
+            }
+            position = req.getOffset();
+            remaining = size - position;
+            if (req.getLength() >= 0) {
+                remaining = Math.min(remaining, req.getLength());
+            }
+            logger.info("uploading file: " + shared.getFile() + " request: " + req);
+            service.getScheduler().submit(channel.socket().getInetAddress(), this);
+        }
+
+        @Override
+        public void start(Runnable done) {
+            execute(() -> {
+                this.done = done;
+                if (!channel.isOpen()) {
+                    close();
+                    return;
+                }
+                started = true;
+                send(ranged ? "OK " + remaining + "\n\n" : "OK\n\n");
+            });
+        }
+
+        @Override
+        public void queued(int position) {
+            execute(() -> {
+                if (ranged && !started && channel.isOpen()) {
+                    send(DownloadService.QUEUED + position + "\n");
+                }
+            });
+        }
+
+        @Override
+        public void evicted(String reason) {
+            execute(() -> fail(reason, true));
+        }
+
+        /**
+         * Send an error reply
+         * @param message error message
+         * @param close true to close the connection once the reply is written, false to read the next request
+         */
+        private void fail(String message, boolean close) {
+            logger.info("Upload for " + channel.socket().getInetAddress() + " not started: " + message);
+            closeFile();
+            if (close) {
+                closeWhenWritten = true;
+            } else {
+                nextWhenWritten = true;
+            }
+            send("ERROR\n\n" + message + "\n");
+        }
+
+        /**
+         * Queue a status line and ask for write readiness
+         * @param text status line
+         */
+        private void send(String text) {
+            control.add(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)));
+            enableWrite();
+        }
+
+        /**
+         * Write queued status lines, then as much of the file as the socket and rate limits allow
+         * @throws IOException if I/O problem
+         */
+        void write() throws IOException {
+            while (!control.isEmpty()) {
+                channel.write(control.peek());
+                if (control.peek().hasRemaining()) {
+                    return;
+                }
+                control.poll();
+            }
+            if (closeWhenWritten) {
+                close();
+                return;
+            }
+            if (nextWhenWritten) {
+                nextWhenWritten = false;
+                next();
+                return;
+            }
+            if (!started) {
+                key.interestOps(0);
+                return;
+            }
+            while (remaining > 0) {
+                long n = take(Math.min(remaining, DownloadService.UPLOAD_SLICE));
+                if (n == 0) {
+                    //resume once the rate limit has refilled
+                    long delay = Math.max(peerLimit.nanosUntilAvailable(),
+                            service.getUploadLimit().nanosUntilAvailable());
+                    key.interestOps(0);
+                    writeDelayed = true;
+                    timers.add(new Timer(System.nanoTime() + Math.max(delay, 1), () -> {
+                        writeDelayed = false;
+                        enableWrite();
+                    }));
+                    return;
+                }
+                long sent = file.transferTo(position, n, channel);
+                refund(n - sent);
+                if (sent == 0 && position >= file.size()) {
+                    throw new IOException("File shrank during upload");
+                }
+                position += sent;
+                remaining -= sent;
+                if (sent < n) {
+                    //socket buffer is full
+                    return;
+                }
+            }
+            logger.info("Finished uploading file");
+            finish();
+        }
+
+        /**
+         * Release the slot after a reply has been sent, then read the next request if the reply was framed
+         * @throws IOException if I/O problem
+         */
+        private void finish() throws IOException {
+            started = false;
+            closeFile();
+            release();
+            if (ranged) {
+                next();
+            } else {
+                close();
+            }
+        }
+
+        /**
+         * Take tokens from the connection and global limits
+         * @param max most bytes wanted
+         * @return bytes allowed
+         */
+        private long take(long max) {
+            long n = peerLimit.take(max);
+            long g = service.getUploadLimit().take(n);
+            peerLimit.refund(n - g);
+            return g;
+        }
+
+        /**
+         * Return unused tokens to the connection and global limits
+         * @param n unused bytes
+         */
+        private void refund(long n) {
+            peerLimit.refund(n);
+            service.getUploadLimit().refund(n);
+        }
+
+        /**
+         * Register interest in write readiness
+         */
+        private void enableWrite() {
+            if (key != null && key.isValid() && !writeDelayed) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Close the connection and file and release the slot
+         */
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to close channel: " + e.getMessage());
+            }
+            closeFile();
+            release();
+        }
+
+        /**
+         * Close the file being uploaded, if any
+         */
+        private void closeFile() {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to close file: " + e.getMessage());
+                }
+                file = null;
+            }
+        }
+
+        /**
+         * Give the slot back to the scheduler, if one is held
+         */
+        private void release() {
+            if (done != null) {
+                Runnable release = done;
+                done = null;
+                release.run();
+            }
+        }
+    }
+}
@@ -5,14 +5,18 @@ import klab.serialization.MessageOutput;
 
 import java.io.*;
 import java.net.Socket;
-import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static klab.app.Node.logger;
 
@@ -22,35 +26,75 @@ import static klab.app.Node.logger;
  */
 
 public class DownloadService {
-    private ExecutorService executor = Executors.newFixedThreadPool(4);
+    /**
+     * Suffix of a file that is still being downloaded
+     */
+    public static final String PART_SUFFIX = ".part";
+
+    /**
+     * Number of bytes copied at a time while downloading
+     */
+    private static final int COPY_CHUNK = 65536;
+
+    /**
+     * Most bytes taken from a rate limit at a time
+     */
+    static final int UPLOAD_SLICE = 65536;
+
+    /**
+     * Prefix of the line telling a ranged request its position in the upload queue
+     */
+    public static final String QUEUED = "QUEUED ";
+
+    /**
+     * Most requests sent ahead of the reply being read when downloading several files over one connection
+     */
+    private static final int PIPELINE_DEPTH = 8;
+
+    private ExecutorService executor = TaskExecutors.newFixedPool(4);
+
+    /**
+     * Threads running uploads (one per granted slot)
+     */
+    private final ExecutorService uploads = TaskExecutors.newCachedPool();
+
+    /**
+     * Scheduler granting upload slots
+     */
+    private final UploadScheduler scheduler = new UploadScheduler(NodeConfig.getUploadSlots(),
+            NodeConfig.getUploadQueue(), NodeConfig.getUploadQueueTimeout());
 
-    private HashMap<String, String> fileIDToNameList = new HashMap<String, String>();
+    /**
+     * Limit on the bytes per second sent by all uploads together
+     */
+    private final TokenBucket uploadLimit = new TokenBucket(NodeConfig.getUploadRate(),
+            burst(NodeConfig.getUploadRate()));
 
 
 /**
-     * Set the file ID to name list
-     * @param directory directory
+     * Get the upload scheduler
+     * @return the upload scheduler
      */
-    public void setFileIDToNameList(File directory) {
+    public UploadScheduler getScheduler() {
+        return scheduler;
+    }
 
-        for (File f : directory.listFiles()) {
-            String fileIdString = "";
-            byte[] fileID = ByteBuffer.allocate(4).putInt(f.hashCode()).array();
-            for (int i = 0; i < fileID.length; i++) {
-                fileIdString += String.format("%02X", fileID[i]);
-            }
-            logger.info("File ID: " + fileIdString + " File Name: " + f.getName());
-            fileIDToNameList.put(fileIdString, f.getName());
-        }
+
+/**
+     * Get the threads running uploads
+     * @return the upload executor
+     */
+    Executor getUploads() {
+        return uploads;
     }
 
 
 /**
-     * Get the file ID to name list
-     * @return the file ID to name list
+     * Get the limit shared by all uploads
+     * @return the upload rate limit
      */
-    public HashMap<String, String> getFileIDToNameList() {
-        return fileIDToNameList;
+    public TokenBucket getUploadLimit() {
+        return uploadLimit;
     }
 
 
@@ -65,80 +109,378 @@ public class DownloadService {
 
 
 /**
-     * Download a file
-     * @param args arguments
+     * Download files into partial files next to their final names, resuming from a partial file if an earlier
+     * download was interrupted. Several files are requested over the one connection, with the next requests sent
+     * while the current reply is still arriving.
+     * @param args arguments: command, node, port, then a file ID and file name per file
      * @param s socket
+     * @param directory directory
      * @return runnable
      */
     public Runnable download(String[] args, Socket s, File directory) {
         return () -> {
             try {
-                InputStream is = s.getInputStream();
+                MessageInput in = new MessageInput(s.getInputStream());
                 OutputStream os = s.getOutputStream();
-                //create file output stream with filename
-                File file = new File(args[4]);
-                os.write((args[3] + "\n").getBytes());
-                BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-                String response = reader.readLine();
-                int i;
-                logger.info("Received OK/Error: " + response);
-                if ("OK".equals(response)) {
-                    FileOutputStream fos = new FileOutputStream(directory.getAbsolutePath() + "\\"+ file);
-                    is.transferTo(fos);
-                } else if ("ERROR".equals(response)) {
-                    while ((i = is.read()) != -1) {
-                        System.out.print( (char) i);
+                int count = (args.length - 3) / 2;
+                DownloadRequest[] requests = new DownloadRequest[count];
+                for (int i = 0; i < count; i++) {
+                    long offset = new File(directory, args[4 + 2 * i] + PART_SUFFIX).length();
+                    //servers that only know the original form can still serve a single download that starts at zero,
+                    //but only ranged replies are framed so the connection can carry another one
+                    requests[i] = offset > 0 || count > 1 ? new DownloadRequest(args[3 + 2 * i], offset, -1)
+                            : new DownloadRequest(args[3 + 2 * i]);
+                }
+                int sent = 0;
+                for (int i = 0; i < count; i++) {
+                    while (sent < count && sent - i < PIPELINE_DEPTH) {
+                        os.write(requests[sent++].encode().getBytes());
+                    }
+                    if (!receive(in, requests[i], new File(directory, args[4 + 2 * i])) && i + 1 < count) {
+                        System.err.println("Connection closed after " + args[4 + 2 * i] + "; download again to fetch "
+                                + (count - i - 1) + " remaining files");
+                        break;
                     }
                 }
                 s.close();
-            } catch (IOException e) {
+            } catch (IOException | NumberFormatException e) {
                 logger.info("Error downloading file: " + e.getMessage() + Arrays.toString(e.getStackTrace()));
             }
         };
     }
 
+    /**
+     * Receive the reply to one download request into the file's partial file, moving it into place once complete
+     * @param in reply stream
+     * @param request request the reply answers
+     * @param file file to download to
+     * @return true if the connection can carry another reply, false otherwise
+     * @throws IOException if I/O problem
+     */
+    private static boolean receive(MessageInput in, DownloadRequest request, File file) throws IOException {
+        File part = new File(file.getParentFile(), file.getName() + PART_SUFFIX);
+        String response = readStatus(in, true);
+        logger.info("Received OK/Error: " + response);
+        if ("ERROR".equals(response)) {
+            System.out.println(in.readString());
+            return request.isRanged();
+        }
+        if (!"OK".equals(response) && !response.startsWith("OK ")) {
+            throw new IOException("Unexpected reply: " + response);
+        }
+        long expected = "OK".equals(response) ? -1 : Long.parseLong(response.substring(3));
+        long received;
+        try (FileOutputStream fos = new FileOutputStream(part, true)) {
+            received = copy(in, fos, expected);
+        }
+        if ((expected < 0 || received == expected) && !ContentID.matches(part, request.getFileID())) {
+            //the partial file cannot be trusted for a resume either
+            System.err.println("Download of " + file.getName() + " does not match file ID " + request.getFileID());
+            Files.deleteIfExists(part.toPath());
+        } else if (expected < 0 || received == expected) {
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Finished downloading file: " + file);
+        } else {
+            System.err.println("Download of " + file.getName() + " interrupted after "
+                    + (request.getOffset() + received) + " bytes; download again to resume");
+        }
+        return expected >= 0 && received == expected;
+    }
+
 /**
-     * Upload a file
-     * @param out message output
-     * @param fileID file ID
+     * Read the next request on a download connection and queue it for a slot, closing the connection if the client
+     * sends none in time
+     * @param in request stream
      * @param s socket
      * @param directory directory
-     * @return runnable
      */
+    public void serve(MessageInput in, Socket s, File directory) {
+        try {
+            s.setSoTimeout(NodeConfig.getDownloadRequestTimeout());
+            String line = in.readString();
+            s.setSoTimeout(0);
+            logger.info("Downloading file: " + line);
+            schedule(in, s.getOutputStream(), line, s, directory);
+        } catch (IOException e) {
+            //also the normal end of a connection that carried several downloads
+            logger.info("No download request: " + e.getMessage());
+            closeQuietly(s);
+        }
+    }
 
-    public Runnable upload(OutputStream out, String fileID, Socket s, File directory) {
-        return () -> {
-            try {
-                logger.info("Downloading file: inside upload" );
-                setFileIDToNameList(directory);
-                HashMap<String, String> fileIDToNameList = getFileIDToNameList();
-                String filename = fileIDToNameList.get(fileID);
-                logger.info("Downloading file with filename: " + filename);
-
-                if (filename != null) {
-                    List<File> downloadSearch = FileSearch.searchByName(directory, filename);
-                    logger.info("uploading file: " + downloadSearch.get(0));
-                    out.write("OK\n\n".getBytes());
-                    FileInputStream fis = new FileInputStream(downloadSearch.get(0));
-                    byte[] buffer = new byte[4096];
-                    int j;
-                    while ((j = fis.read(buffer)) != -1) {
-                        out.write(buffer, 0, j);
+/**
+     * Queue an upload for a slot. Ranged requests are sent their queue position while they wait; requests in the
+     * original form wait silently. After a ranged reply the connection is read for another request.
+     * @param in request stream
+     * @param out output stream
+     * @param line request line
+     * @param s socket
+     * @param directory directory
+     */
+    public void schedule(MessageInput in, OutputStream out, String line, Socket s, File directory) {
+        boolean ranged;
+        try {
+            ranged = DownloadRequest.parse(line).isRanged();
+        } catch (IllegalArgumentException e) {
+            ranged = false;
+        }
+        boolean reportPosition = ranged;
+        scheduler.submit(s.getInetAddress(), new UploadScheduler.Job() {
+            //scheduler callbacks run on the scheduler's sweeper or on the thread ending another upload, so every
+            //write happens on an upload thread and one stalled requester cannot hold up the queue
+            private final ReentrantLock writing = new ReentrantLock(); //held while writing to the socket
+            private final AtomicInteger pending = new AtomicInteger(); //newest position not yet sent (0 if none)
+            private volatile boolean started;
+
+            @Override
+            public void start(Runnable done) {
+                started = true;
+                uploads.execute(() -> {
+                    boolean reusable = false;
+                    //a position report still being written finishes before the reply starts
+                    writing.lock();
+                    try {
+                        reusable = reply(out, line, s);
+                    } finally {
+                        writing.unlock();
+                        done.run();
+                    }
+                    if (reusable) {
+                        serve(in, s, directory);
+                    } else {
+                        closeQuietly(s);
                     }
-                    logger.info("Finished uploading file");
-                    fis.close();
-                    s.close();
-                } else {
-                    out.write("ERROR\n\n".getBytes());
-                    out.write("Bad File ID: ".getBytes());
-                    out.write(fileID.getBytes());
-                    out.write("\n".getBytes());
-                    s.close();
+                });
+            }
+
+            @Override
+            public void queued(int position) {
+                //positions reported while a report is waiting to be written replace it
+                if (reportPosition && !started && pending.getAndSet(position) == 0) {
+                    uploads.execute(this::report);
                 }
+            }
 
-            } catch (IOException e) {
-                logger.info("Error uploading file: " + e.getMessage());
+            @Override
+            public void evicted(String reason) {
+                logger.info("Upload for " + s.getInetAddress() + " not started: " + reason);
+                uploads.execute(() -> {
+                    writing.lock();
+                    try {
+                        sendError(out, reason);
+                    } catch (IOException e) {
+                        logger.info("Error uploading file: " + e.getMessage());
+                    } finally {
+                        writing.unlock();
+                        closeQuietly(s);
+                    }
+                });
             }
-        };
+
+            /**
+             * Send the newest queue position unless the upload has started
+             */
+            private void report() {
+                writing.lock();
+                try {
+                    int position = pending.getAndSet(0);
+                    if (position != 0 && !started) {
+                        out.write((QUEUED + position + "\n").getBytes());
+                    }
+                } catch (IOException e) {
+                    closeQuietly(s);
+                } finally {
+                    writing.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Send the reply to a request: the file or the range of it named in the request, or an error
+     * @param out output stream
+     * @param line request line
+     * @param s socket
+     * @return true if the reply was framed and the connection can carry another request, false otherwise
+     */
+    private boolean reply(OutputStream out, String line, Socket s) {
+        try {
+            DownloadRequest request;
+            try {
+                request = DownloadRequest.parse(line);
+            } catch (IllegalArgumentException e) {
+                sendError(out, e.getMessage());
+                return false;
+            }
+            IndexedFile shared = findFile(Node.catalog, request.getFileID());
+            logger.info("Downloading file with filename: " + (shared == null ? null : shared.getName()));
+
+            if (shared == null) {
+                sendError(out, "Bad File ID: " + request.getFileID());
+                return request.isRanged();
+            }
+            logger.info("uploading file: " + shared.getFile() + " request: " + request);
+            try (FileChannel file = FileChannel.open(shared.getFile().toPath(), StandardOpenOption.READ)) {
+                long size = file.size();
+                if (request.getOffset() > size) {
+                    sendError(out, "Bad Range: " + request);
+                    return request.isRanged();
+                }
+                long count = size - request.getOffset();
+                if (request.getLength() >= 0) {
+                    count = Math.min(count, request.getLength());
+                }
+                out.write((request.isRanged() ? "OK " + count + "\n\n" : "OK\n\n").getBytes());
+                //sockets accepted from a channel can be handed to sendfile directly
+                WritableByteChannel target = s.getChannel() != null ? s.getChannel() : Channels.newChannel(out);
+                long peerRate = NodeConfig.getPeerUploadRate();
+                long sent = transfer(file, request.getOffset(), count, target,
+                        new TokenBucket(peerRate, burst(peerRate)), uploadLimit);
+                logger.info("Finished uploading file");
+                return request.isRanged() && sent == count;
+            }
+        } catch (IOException e) {
+            logger.info("Error uploading file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get the burst capacity for an upload rate: a tenth of a second of traffic, but at least one slice
+     * @param rate bytes per second
+     * @return burst capacity in bytes
+     */
+    static long burst(long rate) {
+        return Math.max(UPLOAD_SLICE, rate / 10);
+    }
+
+    /**
+     * Read the status line of a download reply and the blank line after it, skipping queue position lines
+     * @param in reply stream
+     * @param show true to print queue positions for the user
+     * @return status line
+     * @throws IOException if I/O problem
+     */
+    static String readStatus(MessageInput in, boolean show) throws IOException {
+        String status = in.readString();
+        while (status.startsWith(QUEUED)) {
+            logger.info("Download queued at position " + status.substring(QUEUED.length()));
+            if (show) {
+                System.out.println("Download queued at position " + status.substring(QUEUED.length()));
+            }
+            status = in.readString();
+        }
+        in.readString();
+        return status;
+    }
+
+    /**
+     * Close a socket, logging any failure
+     * @param s socket
+     */
+    static void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException e) {
+            logger.info("Unable to close socket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Send an error reply
+     * @param out output stream
+     * @param message error message
+     * @throws IOException if I/O problem
+     */
+    private static void sendError(OutputStream out, String message) throws IOException {
+        out.write(("ERROR\n\n" + message + "\n").getBytes());
+    }
+
+    /**
+     * Copy bytes from a download reply to a file until the expected number has been copied or the stream ends
+     * @param in reply stream positioned after the header
+     * @param out file to copy to
+     * @param expected number of bytes expected (-1 to copy until the stream ends)
+     * @return number of bytes copied
+     * @throws IOException if I/O problem
+     */
+    private static long copy(MessageInput in, OutputStream out, long expected) throws IOException {
+        long copied = 0;
+        while (expected < 0 || copied < expected) {
+            int want = (int) (expected < 0 ? COPY_CHUNK : Math.min(COPY_CHUNK, expected - copied));
+            byte[] chunk = in.readBytes(want);
+            out.write(chunk);
+            copied += chunk.length;
+            if (chunk.length < want) {
+                break;
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Copy part of a file to a channel, letting the operating system move the bytes where it can
+     * @param file file to copy from
+     * @param position offset of the first byte to copy
+     * @param count number of bytes to copy
+     * @param target channel to copy to
+     * @param limits rate limits every byte must be taken from, in order; the connection's own limit goes first so
+     *               a connection waiting on it holds none of the shared tokens
+     * @return number of bytes copied, less than count if the file is shorter than expected
+     * @throws IOException if I/O problem or interrupted while waiting for a rate limit
+     */
+    public static long transfer(FileChannel file, long position, long count, WritableByteChannel target,
+                                TokenBucket... limits) throws IOException {
+        long sent = 0;
+        while (sent < count) {
+            long n = count - sent;
+            try {
+                for (int i = 0; i < limits.length; i++) {
+                    if (limits[i].isUnlimited()) {
+                        continue;
+                    }
+                    //limited transfers go in slices so concurrent uploads take turns
+                    long got = limits[i].acquire(Math.min(n, UPLOAD_SLICE));
+                    //a smaller grant returns the difference to the limits already taken from
+                    for (int j = 0; j < i && got < n; j++) {
+                        if (!limits[j].isUnlimited()) {
+                            limits[j].refund(n - got);
+                        }
+                    }
+                    n = got;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Upload interrupted");
+            }
+            long granted = n;
+            n = file.transferTo(position + sent, granted, target);
+            //tokens for bytes that were not written go back, as when the file ends early
+            for (TokenBucket limit : limits) {
+                limit.refund(granted - Math.max(n, 0));
+            }
+            if (n <= 0 && position + sent >= file.size()) {
+                break;
+            }
+            sent += n;
+        }
+        return sent;
+    }
+
+    /**
+     * Find a shared file by the hex file ID sent in a download request
+     * @param catalog catalog of the shared directory
+     * @param fileID hex file ID
+     * @return shared file or null if the ID is invalid or unknown
+     */
+    static IndexedFile findFile(FileCatalog catalog, String fileID) {
+        if (fileID.length() != 8) {
+            return null;
+        }
+        try {
+            return catalog.findByID(Integer.parseUnsignedInt(fileID, 16));
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 }
@@ -0,0 +1,237 @@
+package klab.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+import static klab.app.Node.logger;
+
+/**
+ * Catalog of the shared directory, indexed once and then kept current from file system events. Readers see an
+ * immutable snapshot made of a base index and a small delta of files changed since the base was built; the watcher
+ * thread publishes a new snapshot per batch of events and folds the delta into a new base once it grows.
+ *
+ * @version 1.0
+ */
+
+public class FileCatalog implements Runnable {
+    /**
+     * Smallest delta that triggers rebuilding the base index
+     */
+    private static final int MIN_REBUILD_DELTA = 64;
+
+    private final File directory;
+    private final Path store; //catalog file (null if the catalog is not persisted)
+    private final WatchService watcher;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private boolean loaded; //true if the snapshot was read from the catalog file and not yet checked
+
+    /**
+     * Catalog contents at one point in time
+     * @param base index of the directory when last rebuilt
+     * @param delta files changed since the base was built by name (null value if the file was removed)
+     */
+    private record Snapshot(FileIndex base, Map<String, IndexedFile> delta) {}
+
+    /**
+     * Constructor for FileCatalog, indexing the directory
+     * @param directory shared directory
+     * @throws IOException if the directory cannot be watched
+     */
+    public FileCatalog(File directory) throws IOException {
+        this(directory, null);
+    }
+
+    /**
+     * Constructor for FileCatalog, opening the catalog file if it is usable and indexing the directory otherwise.
+     * A catalog read from the file answers searches by scanning its entries until the catalog starts running, which
+     * checks it against the directory and builds the full index off the startup path.
+     * @param directory shared directory
+     * @param store catalog file (null if the catalog is not persisted)
+     * @throws IOException if the directory cannot be watched
+     */
+    public FileCatalog(File directory, Path store) throws IOException {
+        this.directory = directory;
+        this.store = store;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        //watch before indexing so no change falls between the two
+        directory.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        if (store != null && Files.exists(store)) {
+            try {
+                FileIndex base = FileIndex.unindexed(CatalogStore.load(store, directory));
+                snapshot.set(new Snapshot(base, Collections.emptyMap()));
+                loaded = true;
+                logger.info("Loaded " + base.size() + " files from " + store);
+                return;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to load catalog file: " + e.getMessage());
+            }
+        }
+        rebuild();
+    }
+
+    /**
+     * Apply file system events to the catalog until the watch is cancelled
+     */
+    @Override
+    public void run() {
+        if (loaded) {
+            //only files whose size or modification time changed while the node was down are read again, and the
+            //postings skipped at startup are built here
+            rebuild();
+            loaded = false;
+        }
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Snapshot current = snapshot.get();
+            Map<String, IndexedFile> delta = new HashMap<>(current.delta());
+            boolean overflow = false;
+            //a file written in several steps raises several events but is only hashed once per batch
+            Set<String> names = new LinkedHashSet<>();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                } else {
+                    names.add(((Path) event.context()).toString());
+                }
+            }
+            List<File> changed = new ArrayList<>();
+            for (String name : names) {
+                File f = new File(directory, name);
+                if (name.endsWith(DownloadService.PART_SUFFIX)) {
+                    continue;
+                }
+                if (!FileIndex.isShared(f)) {
+                    delta.put(name, null);
+                } else {
+                    changed.add(f);
+                }
+            }
+            IndexedFile[] indexed = ContentID.index(changed);
+            for (int i = 0; i < indexed.length; i++) {
+                delta.put(changed.get(i).getName(), indexed[i]);
+            }
+            if (overflow) {
+                rebuild();
+            } else if (delta.size() > Math.max(MIN_REBUILD_DELTA, current.base().size() / 16)) {
+                publish(FileIndex.of(known(new Snapshot(current.base(), delta)).values()));
+            } else {
+                snapshot.set(new Snapshot(current.base(), Collections.unmodifiableMap(delta)));
+            }
+            if (!key.reset()) {
+                logger.log(Level.SEVERE, "Unable to watch directory: " + directory);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Find the files whose names contain the query
+     * @param query substring to look for
+     * @return matching files sorted by size
+     */
+    public List<IndexedFile> search(String query) {
+        Snapshot s = snapshot.get();
+        List<IndexedFile> results = s.base().search(query);
+        if (s.delta().isEmpty()) {
+            return results;
+        }
+        List<IndexedFile> merged = new ArrayList<>(results.size());
+        for (IndexedFile f : results) {
+            if (!s.delta().containsKey(f.getName())) {
+                merged.add(f);
+            }
+        }
+        for (IndexedFile f : s.delta().values()) {
+            if (f != null && f.getName().contains(query)) {
+                merged.add(f);
+            }
+        }
+        merged.sort(Comparator.comparingLong(IndexedFile::getSize));
+        return merged;
+    }
+
+    /**
+     * Find a file by its ID
+     * @param fileID file ID
+     * @return file or null if no shared file has the ID
+     */
+    public IndexedFile findByID(int fileID) {
+        Snapshot s = snapshot.get();
+        for (IndexedFile f : s.delta().values()) {
+            if (f != null && f.getFileIDValue() == fileID) {
+                return f;
+            }
+        }
+        IndexedFile f = s.base().findByID(fileID);
+        return f == null || s.delta().containsKey(f.getName()) ? null : f;
+    }
+
+    /**
+     * List the directory and publish it as a new base, reusing the entries of unchanged files
+     */
+    private void rebuild() {
+        Snapshot current = snapshot.get();
+        FileIndex base = FileIndex.build(directory, current == null ? Collections.emptyMap() : known(current));
+        logger.info("Indexed " + base.size() + " files in " + directory);
+        publish(base);
+    }
+
+    /**
+     * Publish a new base with an empty delta and persist it
+     * @param base index of the directory
+     */
+    private void publish(FileIndex base) {
+        snapshot.set(new Snapshot(base, Collections.emptyMap()));
+        if (store != null) {
+            try {
+                CatalogStore.save(store, directory, base.getFiles());
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to save catalog file: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get every file in a snapshot by name
+     * @param s snapshot
+     * @return files by name
+     */
+    private static Map<String, IndexedFile> known(Snapshot s) {
+        Map<String, IndexedFile> files = new HashMap<>(s.base().size() * 4 / 3 + 1);
+        for (IndexedFile f : s.base().getFiles()) {
+            files.put(f.getName(), f);
+        }
+        s.delta().forEach((name, f) -> {
+            if (f == null) {
+                files.remove(name);
+            } else {
+                files.put(name, f);
+            }
+        });
+        return files;
+    }
+}
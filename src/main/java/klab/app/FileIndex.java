@@ -0,0 +1,271 @@
+package klab.app;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable trigram index over the names of the files in a directory. A query of three or more characters is
+ * answered by intersecting the posting lists of its trigrams and confirming each candidate with a substring test;
+ * shorter queries scan the names. Files are numbered in size order, so every result list is already sorted by size.
+ * An index can also be created without postings, answering every query by scanning the names, where building the
+ * postings would hold up startup.
+ *
+ * @version 1.0
+ */
+
+public final class FileIndex {
+    /**
+     * Length of an indexed n-gram
+     */
+    private static final int GRAM = 3;
+
+    private final List<IndexedFile> files; //indexed files sorted by size
+    private final Map<Long, int[]> postings; //trigram to ascending positions in files (null if not built)
+    private final Map<Integer, IndexedFile> byID; //file ID to file (null if not built)
+
+    /**
+     * Constructor for FileIndex
+     * @param files indexed files sorted by size
+     * @param indexed true to build the postings and ID table, false to scan the files for every query
+     */
+    private FileIndex(List<IndexedFile> files, boolean indexed) {
+        this.files = files;
+        if (!indexed) {
+            this.postings = null;
+            this.byID = null;
+            return;
+        }
+        this.byID = new HashMap<>(files.size() * 4 / 3 + 1);
+        for (IndexedFile f : files) {
+            byID.putIfAbsent(f.getFileIDValue(), f);
+        }
+
+        Map<Long, IntList> lists = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            String name = files.get(i).getName();
+            for (int j = 0; j + GRAM <= name.length(); j++) {
+                IntList list = lists.computeIfAbsent(gram(name, j), k -> new IntList());
+                //a trigram repeated in one name is only posted once
+                list.addOnce(i);
+            }
+        }
+        this.postings = new HashMap<>(lists.size() * 4 / 3 + 1);
+        lists.forEach((k, v) -> postings.put(k, v.toArray()));
+    }
+
+    /**
+     * Index the files in a directory
+     * @param directory directory to index
+     * @return index of the directory
+     */
+    public static FileIndex build(File directory) {
+        return build(directory, Collections.emptyMap());
+    }
+
+    /**
+     * Index the files in a directory, reusing the entries of files whose size and modification time are unchanged
+     * @param directory directory to index
+     * @param known previously indexed files by name
+     * @return index of the directory
+     */
+    public static FileIndex build(File directory, Map<String, IndexedFile> known) {
+        File[] listed = directory.listFiles();
+        List<IndexedFile> files = new ArrayList<>(listed == null ? 0 : listed.length);
+        List<File> changed = new ArrayList<>();
+        if (listed != null) {
+            for (File f : listed) {
+                if (!isShared(f)) {
+                    continue;
+                }
+                IndexedFile old = known.get(f.getName());
+                if (old != null && old.isCurrent(f)) {
+                    files.add(old);
+                } else {
+                    changed.add(f);
+                }
+            }
+        }
+        //only new and changed files are hashed
+        for (IndexedFile f : ContentID.index(changed)) {
+            if (f != null) {
+                files.add(f);
+            }
+        }
+        return of(files);
+    }
+
+    /**
+     * Check if a file in the shared directory is offered to other nodes
+     * @param f file
+     * @return true for regular files that are not still being downloaded, false otherwise
+     */
+    public static boolean isShared(File f) {
+        return !f.getName().endsWith(DownloadService.PART_SUFFIX) && f.isFile();
+    }
+
+    /**
+     * Index a set of already described files
+     * @param files indexed files
+     * @return index of the files
+     */
+    public static FileIndex of(Collection<IndexedFile> files) {
+        IndexedFile[] sorted = files.toArray(new IndexedFile[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(IndexedFile::getSize));
+        return new FileIndex(Arrays.asList(sorted), true);
+    }
+
+    /**
+     * Wrap files without building postings or copying them, so every query scans the list. Creating the index costs
+     * nothing, which suits answering searches from a loaded catalog while the full index is built elsewhere.
+     * @param files indexed files already sorted by size, as written by CatalogStore
+     * @return index of the files
+     */
+    public static FileIndex unindexed(List<IndexedFile> files) {
+        return new FileIndex(files, false);
+    }
+
+    /**
+     * Get the indexed files
+     * @return unmodifiable list of the files sorted by size
+     */
+    public List<IndexedFile> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Find the files whose names contain the query
+     * @param query substring to look for
+     * @return matching files sorted by size
+     */
+    public List<IndexedFile> search(String query) {
+        if (query.length() < GRAM || postings == null) {
+            List<IndexedFile> results = new ArrayList<>();
+            for (IndexedFile f : files) {
+                if (f.getName().contains(query)) {
+                    results.add(f);
+                }
+            }
+            return results;
+        }
+
+        //start from the rarest trigram to keep the candidate set small
+        int grams = query.length() - GRAM + 1;
+        int[][] lists = new int[grams][];
+        for (int j = 0; j < grams; j++) {
+            lists[j] = postings.get(gram(query, j));
+            if (lists[j] == null) {
+                return Collections.emptyList();
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(l -> l.length));
+        int[] candidates = lists[0].clone();
+        int count = candidates.length;
+        for (int j = 1; j < grams && count > 0; j++) {
+            count = intersect(candidates, count, lists[j]);
+        }
+
+        List<IndexedFile> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            IndexedFile f = files.get(candidates[i]);
+            if (f.getName().contains(query)) {
+                results.add(f);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Find a file by its ID
+     * @param fileID file ID
+     * @return file or null if no file has the ID
+     */
+    public IndexedFile findByID(int fileID) {
+        if (byID == null) {
+            for (IndexedFile f : files) {
+                if (f.getFileIDValue() == fileID) {
+                    return f;
+                }
+            }
+            return null;
+        }
+        return byID.get(fileID);
+    }
+
+    /**
+     * Get the number of indexed files
+     * @return number of files
+     */
+    public int size() {
+        return files.size();
+    }
+
+    /**
+     * Pack the n-gram starting at an offset into a key
+     * @param s string
+     * @param off offset of the n-gram
+     * @return n-gram key
+     */
+    private static long gram(String s, int off) {
+        return ((long) s.charAt(off) << 32) | ((long) s.charAt(off + 1) << 16) | s.charAt(off + 2);
+    }
+
+    /**
+     * Intersect two ascending position lists, leaving the result at the front of the first
+     * @param a first list, overwritten with the intersection
+     * @param count number of positions used in a
+     * @param b second list
+     * @return number of positions in the intersection
+     */
+    private static int intersect(int[] a, int count, int[] b) {
+        int n = 0;
+        for (int i = 0, j = 0; i < count && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                a[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Growable list of ints used while building posting lists
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        /**
+         * Append a value unless it is already the last value
+         * @param v value
+         */
+        void addOnce(int v) {
+            if (size > 0 && values[size - 1] == v) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        /**
+         * Copy the values into an array of exact size
+         * @return values
+         */
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package klab.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Shared file with the attributes needed to answer a search, captured when the file was indexed
+ *
+ * @version 1.0
+ */
+
+public final class IndexedFile {
+    private final File file;
+    private final String name;
+    private final long size;
+    private final long lastModified;
+    private final byte[] fileID;
+    private final int fileIDValue;
+
+    /**
+     * Constructor for IndexedFile, reading the size of the file and hashing its contents
+     * @param file shared file
+     * @throws IOException if the file cannot be read
+     */
+    public IndexedFile(File file) throws IOException {
+        //size and time are read first so a write during hashing makes the entry stale rather than wrong
+        this(file, file.length(), file.lastModified(), MessageFactory.generateFileID(file));
+    }
+
+    /**
+     * Constructor for IndexedFile from previously recorded attributes
+     * @param file shared file
+     * @param size size in bytes
+     * @param lastModified modification time in milliseconds
+     * @param fileID file ID
+     */
+    public IndexedFile(File file, long size, long lastModified, byte[] fileID) {
+        this.file = file;
+        this.name = file.getName();
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileID = fileID.clone();
+        this.fileIDValue = ByteBuffer.wrap(fileID).getInt();
+    }
+
+    /**
+     * Check if the recorded size and modification time still describe the file
+     * @param f file on disk
+     * @return true if the file is unchanged, false otherwise
+     */
+    public boolean isCurrent(File f) {
+        return size == f.length() && lastModified == f.lastModified();
+    }
+
+    /**
+     * Get the file
+     * @return file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the file name
+     * @return file name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the file size
+     * @return size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the modification time recorded when the file was indexed
+     * @return modification time in milliseconds
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get the file ID
+     * @return copy of the file ID
+     */
+    public byte[] getFileID() {
+        return fileID.clone();
+    }
+
+    /**
+     * Get the file ID as an int
+     * @return file ID
+     */
+    public int getFileIDValue() {
+        return fileIDValue;
+    }
+}
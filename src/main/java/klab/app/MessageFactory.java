@@ -3,6 +3,7 @@ package klab.app;
 import klab.serialization.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.List;
@@ -38,10 +39,10 @@ public class MessageFactory {
 
     /**
      * Generate a message ID
-     * @return message ID
+     * @return new copy of the message ID
      */
 
-    public byte[] generateMsgID() {
+    public synchronized byte[] generateMsgID() {
         byte[] msgID = this.msgID;
         //um id is changing every other byte change to increment better dummy
         int i = msgID.length - 1;
@@ -55,7 +56,8 @@ public class MessageFactory {
                 break;
             }
         }
-        return msgID;
+        //callers keep the ID, so hand out a copy rather than the counter itself
+        return msgID.clone();
     }
 
     /**
@@ -101,27 +103,25 @@ public class MessageFactory {
     }
 
     /**
-     * Generate results for a response
-     * @param r response message
-     * @param files list of files
-     * @throws BadAttributeValueException if file ID is invalid
+     * Add a result to a response for each indexed file
+     * @param r response
+     * @param files indexed files
+     * @throws BadAttributeValueException if a result fails validation
      */
-
-    public static void generateResults(Response r, List<File> files) throws BadAttributeValueException {
-        for (File f : files) {
-            byte[] fileID = ByteBuffer.allocate(4).putInt(f.hashCode()).array();
-            Result result = new Result(fileID, f.length(), f.getName());
-            r.addResult(result);
+    public static void addResults(Response r, List<IndexedFile> files) throws BadAttributeValueException {
+        for (IndexedFile f : files) {
+            r.addResult(new Result(f.getFileID(), f.getSize(), f.getName()));
         }
     }
 
     /**
-     * Generate a file ID
+     * Generate a file ID from the contents of a file
      * @param f file
      * @return file ID
+     * @throws IOException if the file cannot be read
      */
-    public static byte[] generateFileID(File f) {
-        return ByteBuffer.allocate(4).putInt(f.hashCode()).array();
+    public static byte[] generateFileID(File f) throws IOException {
+        return ContentID.of(f);
     }
 
     /**
@@ -0,0 +1,68 @@
+package klab.app;
+
+/**
+ * Message ID packed into two longs for use as a map key
+ *
+ * @version 1.0
+ */
+public final class MessageID {
+    /**
+     * Length of a message ID
+     */
+    private static final int ID_LENGTH = 15;
+
+    private final long high; //first 7 bytes of the ID
+    private final long low; //last 8 bytes of the ID
+
+    /**
+     * Constructor for MessageID
+     * @param high first 7 bytes of the ID
+     * @param low last 8 bytes of the ID
+     */
+    private MessageID(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Pack a message ID
+     * @param id 15 byte message ID
+     * @return packed message ID
+     * @throws IllegalArgumentException if id is not 15 bytes
+     */
+    public static MessageID of(byte[] id) {
+        if (id == null || id.length != ID_LENGTH) {
+            throw new IllegalArgumentException("id is not correct length");
+        }
+        long high = 0;
+        for (int i = 0; i < 7; i++) {
+            high = (high << 8) | (id[i] & 0xFF);
+        }
+        long low = 0;
+        for (int i = 7; i < ID_LENGTH; i++) {
+            low = (low << 8) | (id[i] & 0xFF);
+        }
+        return new MessageID(high, low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MessageID id)) return false;
+        return high == id.high && low == id.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high * 31 + low);
+    }
+
+    /**
+     * Returns the ID in hex
+     * @return hex string
+     */
+    @Override
+    public String toString() {
+        return String.format("%014X%016X", high, low);
+    }
+}
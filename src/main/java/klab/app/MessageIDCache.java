@@ -0,0 +1,128 @@
+package klab.app;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of values keyed by message ID whose entries expire a fixed time after insertion
+ *
+ * @param <V> type of cached value
+ * @version 1.0
+ */
+public class MessageIDCache<V> {
+    private final int capacity;
+    private final long lifetimeNanos;
+    //insertion order is also expiry order because every entry has the same lifetime
+    private final LinkedHashMap<MessageID, Entry<V>> entries = new LinkedHashMap<>();
+
+    /**
+     * Cached value with its expiry time
+     * @param value cached value
+     * @param expires expiry time in System.nanoTime units
+     * @param <V> type of cached value
+     */
+    private record Entry<V>(V value, long expires) {}
+
+    /**
+     * Constructor for MessageIDCache
+     * @param capacity maximum number of entries
+     * @param lifetimeMillis milliseconds an entry lives after insertion
+     * @throws IllegalArgumentException if capacity or lifetime is not positive
+     */
+    public MessageIDCache(int capacity, long lifetimeMillis) {
+        if (capacity < 1 || lifetimeMillis < 1) {
+            throw new IllegalArgumentException("capacity and lifetime must be positive");
+        }
+        this.capacity = capacity;
+        this.lifetimeNanos = lifetimeMillis * 1_000_000L;
+    }
+
+    /**
+     * Add an entry unless a live entry for the ID exists
+     * @param id message ID
+     * @param value value to cache
+     * @return true if the entry was added, false if the ID was already present
+     */
+    public synchronized boolean putIfAbsent(MessageID id, V value) {
+        long now = System.nanoTime();
+        evictExpired(now);
+        if (entries.containsKey(id)) {
+            return false;
+        }
+        insert(id, value, now);
+        return true;
+    }
+
+    /**
+     * Add or replace an entry, restarting its lifetime
+     * @param id message ID
+     * @param value value to cache
+     */
+    public synchronized void put(MessageID id, V value) {
+        long now = System.nanoTime();
+        evictExpired(now);
+        entries.remove(id);
+        insert(id, value, now);
+    }
+
+    /**
+     * Get the live value for an ID
+     * @param id message ID
+     * @return cached value or null if absent or expired
+     */
+    public synchronized V get(MessageID id) {
+        Entry<V> entry = entries.get(id);
+        if (entry == null || entry.expires() - System.nanoTime() <= 0) {
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * Remove the entry for an ID
+     * @param id message ID
+     * @return removed value or null if absent or expired
+     */
+    public synchronized V remove(MessageID id) {
+        Entry<V> entry = entries.remove(id);
+        if (entry == null || entry.expires() - System.nanoTime() <= 0) {
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * Get the number of entries, including expired entries not yet evicted
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Insert an entry, evicting the oldest entry if the cache is full
+     * @param id message ID
+     * @param value value to cache
+     * @param now current time
+     */
+    private void insert(MessageID id, V value, long now) {
+        if (entries.size() >= capacity) {
+            Iterator<MessageID> oldest = entries.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        entries.put(id, new Entry<>(value, now + lifetimeNanos));
+    }
+
+    /**
+     * Remove expired entries from the head of the cache
+     * @param now current time
+     */
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<MessageID, Entry<V>>> it = entries.entrySet().iterator();
+        while (it.hasNext() && it.next().getValue().expires() - now <= 0) {
+            it.remove();
+        }
+    }
+}
@@ -1,17 +1,17 @@
 package klab.app;
 
 import klab.serialization.Result;
-import klab.serialization.Search;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.*;
 
 /**
@@ -24,21 +24,65 @@ public class Node {
 
 
     /**
-     * List of searches
+     * Traffic counters
      */
-    protected static HashMap<String, Search> searchList = new HashMap<String, Search>();
+    protected static final NodeMetrics metrics = new NodeMetrics();
 
+    /**
+     * Searches sent by this node that are waiting for responses
+     */
+    protected static final SearchRegistry searchRegistry =
+            new SearchRegistry(NodeConfig.getSearchCapacity(), NodeConfig.getSearchLifetime(), metrics);
+
+
+    /**
+     * IDs of recently processed searches, used to drop duplicates arriving over other paths
+     */
+    protected static final MessageIDCache<Boolean> seenSearches =
+            new MessageIDCache<>(NodeConfig.getSeenCapacity(), NodeConfig.getSeenLifetime());
+
+    /**
+     * Neighbor each forwarded search arrived from, used to route responses back along the search path
+     */
+    protected static final MessageIDCache<Peer> routes =
+            new MessageIDCache<>(NodeConfig.getSeenCapacity(), NodeConfig.getSeenLifetime());
+
+    /**
+     * Download servers that offered files in responses to our searches
+     */
+    protected static final SourceTable sources = new SourceTable(4096);
+
+    /**
+     * Catalog of the shared directory
+     */
+    protected static FileCatalog catalog;
 
     /**
      * List of peers
      */
 
-    protected static List<Peer> peerList = new ArrayList<Peer>();
+    protected static List<Peer> peerList = new CopyOnWriteArrayList<Peer>();
 
     /**
-     * Thread pool for handling threads
+     * Thread pool for handling threads (a virtual thread per task in virtual thread mode)
      */
-    protected static final ExecutorService pool = Executors.newCachedThreadPool();
+    protected static final ExecutorService pool = TaskExecutors.newCachedPool();
+
+    /**
+     * Workers handling received messages, each neighbor's messages in order on one stripe
+     */
+    protected static final StripedExecutor handlers = new StripedExecutor(NodeConfig.getWorkers(), "handler");
+
+    /**
+     * Admission control shedding searches from neighbors when the handlers fall behind
+     */
+    protected static final AdmissionController admission = new AdmissionController(handlers::getQueued,
+            NodeConfig.getAdmissionQueue(), NodeConfig.getAdmissionLatency(), metrics);
+
+    /**
+     * Event loop for neighbor connections (null unless in nio mode)
+     */
+    protected static SelectorLoop selectorLoop;
 
     /**
      * Download service for downloading files
@@ -100,15 +144,37 @@ public class Node {
         if (!directory.exists()) {
             System.err.println("Directory provided does not exist");
         }
+        if (TaskExecutors.isFallback()) {
+            logger.warning("Virtual threads were requested but cannot be used, using platform threads");
+        }
+
+        try {
+            catalog = new FileCatalog(directory, NodeConfig.getCatalogFile(directory));
+            pool.submit(catalog);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to index directory: " + directory);
+            System.exit(1);
+        }
 
         int nodePort = Integer.parseInt(args[0]);
         int downloadPort = Integer.parseInt(args[2]);
 
 
         try {
-            ServerSocket nodeSocket = new ServerSocket(nodePort);
-
-            ServerSocket downloadSocket = new ServerSocket(downloadPort);
+            ServerSocket nodeSocket;
+            if (NodeConfig.isNio()) {
+                ServerSocketChannel nodeChannel = ServerSocketChannel.open();
+                nodeChannel.bind(new InetSocketAddress(nodePort));
+                nodeSocket = nodeChannel.socket();
+                selectorLoop = new SelectorLoop(nodeChannel, directory);
+            } else {
+                nodeSocket = new ServerSocket(nodePort);
+            }
+
+            //accepted download sockets keep their channel so uploads can use transferTo
+            ServerSocketChannel downloadChannel = ServerSocketChannel.open();
+            downloadChannel.bind(new InetSocketAddress(downloadPort));
+            ServerSocket downloadSocket = downloadChannel.socket();
 
             //established ServerSockets for the node and download ports
 
@@ -123,8 +189,16 @@ public class Node {
             pool.submit(commandLine);
 
             //initiate listening for connections and downloads
-            pool.submit(ch.listenForConnections(nodeSocket, directory));
-            pool.submit(ch.listenForDownload(downloadSocket, directory));
+            if (selectorLoop != null) {
+                pool.submit(selectorLoop);
+            } else {
+                pool.submit(ch.listenForConnections(nodeSocket, directory));
+            }
+            if (NodeConfig.isNioDownload()) {
+                pool.submit(new DownloadServer(downloadChannel, DS, catalog));
+            } else {
+                pool.submit(ch.listenForDownload(downloadSocket, directory));
+            }
 
 
         } catch (IOException e) {
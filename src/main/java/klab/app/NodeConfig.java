@@ -0,0 +1,340 @@
+package klab.app;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Class for reading node settings from system properties
+ *
+ * @version 1.0
+ */
+
+public class NodeConfig {
+
+    /**
+     * Property selecting the transport for neighbor connections (blocking or nio)
+     */
+    public static final String TRANSPORT = "klab.transport";
+
+    /**
+     * Property for the number of threads handling received messages
+     */
+    public static final String WORKERS = "klab.workers";
+
+    /**
+     * Property for the maximum number of remembered search IDs
+     */
+    public static final String SEEN_CAPACITY = "klab.seen.capacity";
+
+    /**
+     * Property for the milliseconds a search ID is remembered
+     */
+    public static final String SEEN_LIFETIME = "klab.seen.lifetime";
+
+    /**
+     * Property for the maximum number of outstanding searches
+     */
+    public static final String SEARCH_CAPACITY = "klab.search.capacity";
+
+    /**
+     * Property for the milliseconds a search waits for responses
+     */
+    public static final String SEARCH_LIFETIME = "klab.search.lifetime";
+
+    /**
+     * Property for the file the catalog of the shared directory is saved to
+     */
+    public static final String CATALOG_FILE = "klab.catalog";
+
+    /**
+     * Property for the bytes fetched per request when downloading from several sources
+     */
+    public static final String CHUNK_SIZE = "klab.chunk";
+
+    /**
+     * Property for the bytes per second sent by all uploads together (0 for no limit)
+     */
+    public static final String UPLOAD_RATE = "klab.upload.rate";
+
+    /**
+     * Property for the bytes per second sent to each download connection (0 for no limit)
+     */
+    public static final String PEER_UPLOAD_RATE = "klab.upload.peerRate";
+
+    /**
+     * Property for the number of uploads running at once
+     */
+    public static final String UPLOAD_SLOTS = "klab.upload.slots";
+
+    /**
+     * Property for the number of uploads that may wait for a slot
+     */
+    public static final String UPLOAD_QUEUE = "klab.upload.queue";
+
+    /**
+     * Property for the milliseconds an upload may wait for a slot
+     */
+    public static final String UPLOAD_QUEUE_TIMEOUT = "klab.upload.queueTimeout";
+
+    /**
+     * Property selecting the download server (blocking or nio)
+     */
+    public static final String DOWNLOAD = "klab.download";
+
+    /**
+     * Property for the milliseconds a download client may take to send its next request
+     */
+    public static final String DOWNLOAD_REQUEST_TIMEOUT = "klab.download.requestTimeout";
+
+    /**
+     * Property for the most frames queued for one neighbor
+     */
+    public static final String OUTBOUND_CAPACITY = "klab.outbound.capacity";
+
+    /**
+     * Property selecting what is dropped when a neighbor's queue is full (drop_oldest or drop_newest)
+     */
+    public static final String OUTBOUND_OVERFLOW = "klab.outbound.overflow";
+
+    /**
+     * Property selecting the threads running readers, writers, message handlers and transfers (platform or virtual)
+     */
+    public static final String THREADS = "klab.threads";
+
+    /**
+     * Property for the number of messages waiting for a handler above which received searches are shed
+     */
+    public static final String ADMISSION_QUEUE = "klab.admission.queue";
+
+    /**
+     * Property for the milliseconds of handling latency above which received searches are shed
+     */
+    public static final String ADMISSION_LATENCY = "klab.admission.latency";
+
+    /**
+     * Property for the searches per second accepted from one neighbor (0 for no limit)
+     */
+    public static final String SEARCH_RATE = "klab.search.rate";
+
+    /**
+     * Property for the searches one neighbor may send in a burst above the rate
+     */
+    public static final String SEARCH_BURST = "klab.search.burst";
+
+    /**
+     * Constructor for NodeConfig
+     */
+    private NodeConfig() {}
+
+    /**
+     * Check if neighbor connections use the non-blocking transport
+     * @return true if nio transport selected, false otherwise
+     */
+
+    public static boolean isNio() {
+        return "nio".equalsIgnoreCase(System.getProperty(TRANSPORT, "blocking"));
+    }
+
+    /**
+     * Get the number of message handling threads
+     * @return number of threads
+     */
+
+    public static int getWorkers() {
+        return Math.max(1, Integer.getInteger(WORKERS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Get the maximum number of remembered search IDs
+     * @return number of search IDs
+     */
+
+    public static int getSeenCapacity() {
+        return Math.max(1, Integer.getInteger(SEEN_CAPACITY, 65536));
+    }
+
+    /**
+     * Get the time a search ID is remembered
+     * @return milliseconds
+     */
+
+    public static long getSeenLifetime() {
+        return Math.max(1, Long.getLong(SEEN_LIFETIME, 60000));
+    }
+
+    /**
+     * Get the maximum number of outstanding searches
+     * @return number of searches
+     */
+
+    public static int getSearchCapacity() {
+        return Math.max(1, Integer.getInteger(SEARCH_CAPACITY, 1024));
+    }
+
+    /**
+     * Get the time a search waits for responses
+     * @return milliseconds
+     */
+
+    public static long getSearchLifetime() {
+        return Math.max(1, Long.getLong(SEARCH_LIFETIME, 60000));
+    }
+
+    /**
+     * Get the file the catalog of a shared directory is saved to, by default a file in the temporary directory
+     * named after the shared directory
+     * @param directory shared directory
+     * @return catalog file
+     */
+
+    public static Path getCatalogFile(File directory) {
+        String file = System.getProperty(CATALOG_FILE);
+        if (file != null) {
+            return Paths.get(file);
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"),
+                String.format("klab-%08X.catalog", directory.getAbsoluteFile().toPath().normalize().hashCode()));
+    }
+
+    /**
+     * Get the bytes fetched per request when downloading from several sources
+     * @return chunk size
+     */
+
+    public static int getChunkSize() {
+        return Math.max(1, Integer.getInteger(CHUNK_SIZE, 1 << 20));
+    }
+
+    /**
+     * Get the bytes per second sent by all uploads together
+     * @return rate or 0 for no limit
+     */
+
+    public static long getUploadRate() {
+        return Math.max(0, Long.getLong(UPLOAD_RATE, 0));
+    }
+
+    /**
+     * Get the bytes per second sent to each download connection
+     * @return rate or 0 for no limit
+     */
+
+    public static long getPeerUploadRate() {
+        return Math.max(0, Long.getLong(PEER_UPLOAD_RATE, 0));
+    }
+
+    /**
+     * Get the number of uploads running at once
+     * @return number of slots
+     */
+
+    public static int getUploadSlots() {
+        return Math.max(1, Integer.getInteger(UPLOAD_SLOTS, 4));
+    }
+
+    /**
+     * Get the number of uploads that may wait for a slot
+     * @return queue length
+     */
+
+    public static int getUploadQueue() {
+        return Math.max(0, Integer.getInteger(UPLOAD_QUEUE, 64));
+    }
+
+    /**
+     * Get the time an upload may wait for a slot
+     * @return milliseconds
+     */
+
+    public static long getUploadQueueTimeout() {
+        return Math.max(1, Long.getLong(UPLOAD_QUEUE_TIMEOUT, 60000));
+    }
+
+    /**
+     * Check if download connections are served by the non-blocking download server
+     * @return true unless the blocking download server is selected
+     */
+
+    public static boolean isNioDownload() {
+        return !"blocking".equalsIgnoreCase(System.getProperty(DOWNLOAD, "nio"));
+    }
+
+    /**
+     * Get the time a download client may take to send its next request
+     * @return milliseconds
+     */
+
+    public static int getDownloadRequestTimeout() {
+        return Math.max(1, Integer.getInteger(DOWNLOAD_REQUEST_TIMEOUT, 30000));
+    }
+
+    /**
+     * Get the most frames queued for one neighbor
+     * @return number of frames
+     */
+
+    public static int getOutboundCapacity() {
+        return Math.max(1, Integer.getInteger(OUTBOUND_CAPACITY, 1024));
+    }
+
+    /**
+     * Get what is dropped when a neighbor's queue is full
+     * @return overflow policy, DROP_OLDEST if the property is missing or invalid
+     */
+
+    public static OutboundQueue.Overflow getOutboundOverflow() {
+        try {
+            return OutboundQueue.Overflow.valueOf(System.getProperty(OUTBOUND_OVERFLOW, "drop_oldest")
+                    .toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return OutboundQueue.Overflow.DROP_OLDEST;
+        }
+    }
+
+    /**
+     * Check if tasks run on virtual threads
+     * @return true if virtual threads selected, false otherwise
+     */
+
+    public static boolean isVirtualThreads() {
+        return "virtual".equalsIgnoreCase(System.getProperty(THREADS, "platform"));
+    }
+
+    /**
+     * Get the number of waiting messages above which received searches are shed
+     * @return number of messages
+     */
+
+    public static int getAdmissionQueue() {
+        return Math.max(1, Integer.getInteger(ADMISSION_QUEUE, 256));
+    }
+
+    /**
+     * Get the handling latency above which received searches are shed
+     * @return milliseconds
+     */
+
+    public static long getAdmissionLatency() {
+        return Math.max(1, Long.getLong(ADMISSION_LATENCY, 200));
+    }
+
+    /**
+     * Get the searches per second accepted from one neighbor
+     * @return searches per second, 0 for no limit
+     */
+
+    public static long getSearchRate() {
+        return Math.max(0, Long.getLong(SEARCH_RATE, 0));
+    }
+
+    /**
+     * Get the searches one neighbor may send in a burst
+     * @param rate searches per second accepted from one neighbor
+     * @return number of searches, twice the rate by default
+     */
+
+    public static long getSearchBurst(long rate) {
+        return Math.max(1, Long.getLong(SEARCH_BURST, 2 * rate));
+    }
+}
@@ -0,0 +1,70 @@
+package klab.app;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing the traffic handled by the node
+ *
+ * @version 1.0
+ */
+
+public class NodeMetrics {
+
+    /**
+     * Searches dropped because their ID was already seen
+     */
+    public final LongAdder duplicateSearches = new LongAdder();
+
+    /**
+     * Relayed responses dropped because no route to the searching neighbor was known
+     */
+    public final LongAdder unroutableResponses = new LongAdder();
+
+    /**
+     * Outstanding searches removed after their lifetime ended
+     */
+    public final LongAdder expiredSearches = new LongAdder();
+
+    /**
+     * Outstanding searches removed early because the search table was full
+     */
+    public final LongAdder evictedSearches = new LongAdder();
+
+    /**
+     * Responses received for a search that had already been removed
+     */
+    public final LongAdder lateResponses = new LongAdder();
+
+    /**
+     * Frames dropped because a neighbor's outbound queue was full
+     */
+    public final LongAdder droppedFrames = new LongAdder();
+
+    /**
+     * Searches from neighbors shed because the node was overloaded
+     */
+    public final LongAdder shedSearches = new LongAdder();
+
+    /**
+     * Searches dropped because their neighbor sent searches faster than its rate limit
+     */
+    public final LongAdder rateLimitedSearches = new LongAdder();
+
+    /**
+     * Returns a String representation of the counters
+     *
+     * @return String representation
+     */
+
+    @Override
+    public String toString() {
+        return "Duplicate searches: " + duplicateSearches.sum() + System.lineSeparator()
+                + "Unroutable responses: " + unroutableResponses.sum() + System.lineSeparator()
+                + "Expired searches: " + expiredSearches.sum() + System.lineSeparator()
+                + "Evicted searches: " + evictedSearches.sum() + System.lineSeparator()
+                + "Late responses: " + lateResponses.sum() + System.lineSeparator()
+                + "Dropped outbound frames: " + droppedFrames.sum() + System.lineSeparator()
+                + "Shed searches: " + shedSearches.sum() + System.lineSeparator()
+                + "Rate limited searches: " + rateLimitedSearches.sum() + System.lineSeparator();
+    }
+}
@@ -0,0 +1,219 @@
+package klab.app;
+
+import klab.serialization.Frame;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of frames waiting to be written to one neighbor, drained by a single writer. Searches and responses
+ * wait in separate lanes and searches go first, so a small search is not held up behind large responses; after a
+ * run of searches one waiting response is let through so responses cannot starve. When the queue is full a frame is
+ * dropped according to the overflow policy.
+ *
+ * @version 1.0
+ */
+
+public class OutboundQueue {
+    /**
+     * What to drop when a frame is offered to a full queue
+     */
+    public enum Overflow {
+        /**
+         * Drop the oldest frame relayed for other nodes, or the oldest frame if none is queued
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the frame being offered
+         */
+        DROP_NEWEST
+    }
+
+    /**
+     * Searches written in a row before a waiting response is let through
+     */
+    private static final int SEARCH_RUN = 8;
+
+    /**
+     * Queued frame
+     * @param frame encoded message
+     * @param forwarded true if the frame is relayed for another node, false if this node created it
+     * @param sequence order in which the frame was queued
+     */
+    private record Entry(Frame frame, boolean forwarded, long sequence) {}
+
+    private final int capacity;
+    private final Overflow overflow;
+    private final Deque<Entry> searches = new ArrayDeque<>();
+    private final Deque<Entry> responses = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private long sequence;
+    private int searchRun; //searches taken since the last response
+    private boolean closed;
+
+    /**
+     * Constructor for OutboundQueue
+     * @param capacity most frames queued
+     * @param overflow what to drop when the queue is full
+     */
+    public OutboundQueue(int capacity, Overflow overflow) {
+        this.capacity = capacity;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Queue a frame for writing
+     * @param frame encoded message
+     * @param forwarded true if the frame is relayed for another node, false if this node created it
+     * @return frame dropped to stay within capacity (possibly the frame offered), null if nothing was dropped
+     * @throws IOException if the queue is closed
+     */
+    public Frame offer(Frame frame, boolean forwarded) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Neighbor connection is closed");
+            }
+            Frame dropped = null;
+            if (searches.size() + responses.size() >= capacity) {
+                if (overflow == Overflow.DROP_NEWEST) {
+                    return frame;
+                }
+                dropped = dropOldest();
+            }
+            (isSearch(frame) ? searches : responses).add(new Entry(frame, forwarded, sequence++));
+            notEmpty.signal();
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the next frame to write without waiting
+     * @return frame or null if the queue is empty
+     */
+    public Frame poll() {
+        lock.lock();
+        try {
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the next frame to write, waiting until one is queued
+     * @return frame or null if the queue has been closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Frame take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!closed && searches.isEmpty() && responses.isEmpty()) {
+                notEmpty.await();
+            }
+            return closed ? null : next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check if no frame is waiting
+     * @return true if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return searches.isEmpty() && responses.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of frames waiting
+     * @return number of frames
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return searches.size() + responses.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the queue, discarding waiting frames and waking the writer
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            searches.clear();
+            responses.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the next frame by lane priority (lock held)
+     * @return frame or null if the queue is empty
+     */
+    private Frame next() {
+        Entry e;
+        if (!searches.isEmpty() && (responses.isEmpty() || searchRun < SEARCH_RUN)) {
+            e = searches.poll();
+            searchRun++;
+        } else {
+            e = responses.poll();
+            searchRun = 0;
+        }
+        return e == null ? null : e.frame();
+    }
+
+    /**
+     * Remove the oldest relayed frame from either lane, or the oldest frame if every queued frame is this node's
+     * own (lock held)
+     * @return dropped frame
+     */
+    private Frame dropOldest() {
+        Entry victim = null;
+        for (Deque<Entry> lane : List.of(searches, responses)) {
+            for (Entry e : lane) {
+                if (e.forwarded()) {
+                    if (victim == null || e.sequence() < victim.sequence()) {
+                        victim = e;
+                    }
+                    //entries in a lane are in queue order
+                    break;
+                }
+            }
+        }
+        if (victim == null) {
+            Entry s = searches.peek();
+            Entry r = responses.peek();
+            victim = r == null || (s != null && s.sequence() < r.sequence()) ? s : r;
+        }
+        (isSearch(victim.frame()) ? searches : responses).remove(victim);
+        return victim.frame();
+    }
+
+    /**
+     * Check if a frame carries a search
+     * @param frame encoded message
+     * @return true if a search, false otherwise
+     */
+    private static boolean isSearch(Frame frame) {
+        return frame.getMessageType() == 1;
+    }
+}
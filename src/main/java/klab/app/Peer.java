@@ -1,15 +1,21 @@
 package klab.app;
 
 import klab.serialization.BadAttributeValueException;
+import klab.serialization.FlushPolicy;
+import klab.serialization.Frame;
 import klab.serialization.Message;
 import klab.serialization.MessageInput;
 import klab.serialization.MessageOutput;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.logging.Level;
+
+import static klab.app.Node.logger;
 
 /**
- * Peer class for the KLab network
+ * Peer class for the KLab network. Frames for the peer wait in its OutboundQueue and are written by a single writer,
+ * so a slow neighbor only holds up its own queue.
  *
  * @version 1.0
  */
@@ -18,6 +24,9 @@ public class Peer {
     private MessageInput in;
     private MessageOutput out;
     private ThreadFunctions tf;
+    private final OutboundQueue queue = new OutboundQueue(NodeConfig.getOutboundCapacity(),
+            NodeConfig.getOutboundOverflow());
+    private final TokenBucket searchLimit;
 
 
     /**
@@ -26,10 +35,97 @@ public class Peer {
      * @throws IOException exception
      */
     public Peer(Socket socket) throws IOException {
+        this(socket, new MessageInput(socket.getInputStream()),
+                new MessageOutput(socket.getOutputStream(), FlushPolicy.ON_IDLE, 1));
+    }
+
+    /**
+     * Constructor for peers that supply their own input and output
+     * @param socket socket
+     * @param in message input (null if messages are not read by a blocking reader)
+     * @param out message output (null if messages are not written through a stream)
+     */
+    protected Peer(Socket socket, MessageInput in, MessageOutput out) {
         this.socket = socket;
-        this.in = new MessageInput(socket.getInputStream());
-        this.out = new MessageOutput(socket.getOutputStream());
+        this.in = in;
+        this.out = out;
         this.tf = new ThreadFunctions();
+        long searchRate = NodeConfig.getSearchRate();
+        this.searchLimit = new TokenBucket(searchRate, NodeConfig.getSearchBurst(searchRate));
+    }
+
+
+    /**
+     * Send a message created by this node to the peer
+     * @param m message
+     * @throws IOException if I/O problem
+     */
+    public void send(Message m) throws IOException {
+        send(Frame.of(m));
+    }
+
+    /**
+     * Send an encoded message created by this node to the peer
+     * @param frame encoded message
+     * @throws IOException if the connection is closed
+     */
+    public void send(Frame frame) throws IOException {
+        enqueue(frame, false);
+    }
+
+    /**
+     * Relay an encoded message from another node to the peer. Relayed messages are dropped first when the peer
+     * cannot keep up.
+     * @param frame encoded message
+     * @throws IOException if the connection is closed
+     */
+    public void forward(Frame frame) throws IOException {
+        enqueue(frame, true);
+    }
+
+    /**
+     * Queue a frame and wake the writer
+     * @param frame encoded message
+     * @param forwarded true if relayed from another node
+     * @throws IOException if the connection is closed
+     */
+    private void enqueue(Frame frame, boolean forwarded) throws IOException {
+        Frame dropped = queue.offer(frame, forwarded);
+        if (dropped != null) {
+            Node.metrics.droppedFrames.increment();
+            logger.log(Level.FINE, "Outbound queue full, dropped: " + dropped);
+        }
+        queued();
+    }
+
+    /**
+     * Called after a frame is queued. The blocking writer waits on the queue itself, so there is nothing to do here.
+     */
+    protected void queued() {
+    }
+
+    /**
+     * Get the writer for the peer, writing queued frames to the socket until the connection closes. Frames are
+     * buffered while more are waiting and flushed once the queue is empty.
+     * @return runnable
+     */
+    public Runnable writer() {
+        return () -> {
+            try {
+                Frame frame;
+                while ((frame = queue.take()) != null) {
+                    frame.writeTo(out);
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to write to neighbor: " + e.getMessage());
+                close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
     }
 
 
@@ -37,6 +133,7 @@ public class Peer {
      * Method for sending a message
      */
     public void close() {
+        queue.close();
         try {
             socket.close();
         } catch (IOException e) {
@@ -44,6 +141,22 @@ public class Peer {
         }
     }
 
+    /**
+     * Get the limit on searches accepted from the peer
+     * @return search rate limit
+     */
+    public TokenBucket getSearchLimit() {
+        return searchLimit;
+    }
+
+    /**
+     * Get the outbound queue
+     * @return outbound queue
+     */
+    protected OutboundQueue getQueue() {
+        return queue;
+    }
+
 
     /**
      * get the socket
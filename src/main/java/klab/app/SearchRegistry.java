@@ -0,0 +1,139 @@
+package klab.app;
+
+import klab.serialization.Search;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table of searches sent by this node that are still waiting for responses. Searches are removed once their
+ * lifetime ends or the table is full; the IDs of removed searches are kept for another lifetime so responses
+ * arriving after removal are counted as late rather than treated as relayed traffic.
+ *
+ * @version 1.0
+ */
+
+public class SearchRegistry {
+    private final int capacity;
+    private final long lifetimeNanos;
+    private final NodeMetrics metrics;
+    private final Map<MessageID, Search> searches = new ConcurrentHashMap<>();
+    //registration order is also expiry order because every search has the same lifetime
+    private final Queue<Registration> order = new ConcurrentLinkedQueue<>();
+    private final Map<MessageID, Long> retired = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "search-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Registration time of a search
+     * @param id message ID
+     * @param registered registration time in System.nanoTime units
+     */
+    private record Registration(MessageID id, long registered) {}
+
+    /**
+     * Constructor for SearchRegistry
+     * @param capacity maximum number of outstanding searches
+     * @param lifetimeMillis milliseconds a search waits for responses
+     * @param metrics counters for expired and evicted searches
+     * @throws IllegalArgumentException if capacity or lifetime is not positive
+     */
+    public SearchRegistry(int capacity, long lifetimeMillis, NodeMetrics metrics) {
+        if (capacity < 1 || lifetimeMillis < 1) {
+            throw new IllegalArgumentException("capacity and lifetime must be positive");
+        }
+        this.capacity = capacity;
+        this.lifetimeNanos = lifetimeMillis * 1_000_000L;
+        this.metrics = metrics;
+        long period = Math.max(1, lifetimeMillis / 4);
+        sweeper.scheduleAtFixedRate(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a search that is about to be sent
+     * @param search search
+     */
+    public void register(Search search) {
+        MessageID id = MessageID.of(search.getID());
+        long now = System.nanoTime();
+        synchronized (order) {
+            while (searches.size() >= capacity) {
+                Registration oldest = order.poll();
+                if (oldest == null) {
+                    break;
+                }
+                if (retire(oldest.id(), now)) {
+                    metrics.evictedSearches.increment();
+                }
+            }
+            searches.put(id, search);
+            retired.remove(id);
+            order.add(new Registration(id, now));
+        }
+    }
+
+    /**
+     * Get an outstanding search
+     * @param id message ID
+     * @return search or null if the search is not outstanding
+     */
+    public Search get(MessageID id) {
+        return searches.get(id);
+    }
+
+    /**
+     * Check if a search was sent by this node but has since been removed
+     * @param id message ID of a response
+     * @return true if the search was removed within the last lifetime, false otherwise
+     */
+    public boolean isLate(MessageID id) {
+        return retired.containsKey(id);
+    }
+
+    /**
+     * Get the number of outstanding searches
+     * @return number of searches
+     */
+    public int size() {
+        return searches.size();
+    }
+
+    /**
+     * Remove searches whose lifetime has ended and forget IDs retired more than a lifetime ago
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        synchronized (order) {
+            Registration head;
+            while ((head = order.peek()) != null && now - head.registered() >= lifetimeNanos) {
+                order.poll();
+                if (retire(head.id(), now)) {
+                    metrics.expiredSearches.increment();
+                }
+            }
+        }
+        retired.values().removeIf(removed -> now - removed >= lifetimeNanos);
+    }
+
+    /**
+     * Move a search from the outstanding table to the retired IDs
+     * @param id message ID
+     * @param now current time
+     * @return true if the search was outstanding, false otherwise
+     */
+    private boolean retire(MessageID id, long now) {
+        if (searches.remove(id) == null) {
+            return false;
+        }
+        retired.put(id, now);
+        return true;
+    }
+}
@@ -0,0 +1,142 @@
+package klab.app;
+
+import klab.serialization.Frame;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+import static klab.app.Node.*;
+
+/**
+ * Event loop serving every neighbor connection from a single selector thread
+ *
+ * @version 1.0
+ */
+public class SelectorLoop implements Runnable {
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final File directory;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor for the SelectorLoop
+     * @param serverChannel channel accepting neighbor connections
+     * @param directory directory
+     * @throws IOException if I/O problem
+     */
+    public SelectorLoop(ServerSocketChannel serverChannel, File directory) throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = serverChannel;
+        this.directory = directory;
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Run the event loop
+     */
+    @Override
+    public void run() {
+        while (serverChannel.isOpen()) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Unable to communicate: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Connect to a neighbor and hand the connection to the event loop
+     * @param address address of the neighbor
+     * @throws IOException if I/O problem
+     */
+    public void connect(InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.configureBlocking(false);
+        execute(() -> register(channel));
+    }
+
+    /**
+     * Run a task on the event loop thread
+     * @param task task to run
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Handle a ready key
+     * @param key selection key
+     */
+    private void handle(SelectionKey key) {
+        if (key.isAcceptable()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    register(channel);
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Unable to communicate: " + e.getMessage());
+            }
+            return;
+        }
+        ChannelPeer peer = (ChannelPeer) key.attachment();
+        try {
+            if (key.isReadable()) {
+                for (Frame frame : peer.read()) {
+                    tf.dispatch(frame, peer, directory);
+                }
+            }
+            if (key.isValid() && key.isWritable()) {
+                peer.write();
+            }
+        } catch (IOException e) {
+            logger.info("Disconnected from neighbor " + e.getMessage());
+            key.cancel();
+            peerList.remove(peer);
+            peer.close();
+        }
+    }
+
+    /**
+     * Register a connected channel with the selector
+     * @param channel non-blocking socket channel
+     */
+    private void register(SocketChannel channel) {
+        ChannelPeer peer = new ChannelPeer(channel, this);
+        try {
+            peer.setKey(channel.register(selector, SelectionKey.OP_READ, peer));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to register neighbor: " + e.getMessage());
+            peer.close();
+            return;
+        }
+        peerList.add(peer);
+        logger.info("Connected to peer: " + channel.socket().getInetAddress() + ":" + channel.socket().getPort() +
+                " Peer List Size: " + peerList.size());
+    }
+}
@@ -0,0 +1,92 @@
+package klab.app;
+
+import klab.serialization.Response;
+import klab.serialization.Result;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Table of the download servers that have offered each file in responses to our searches, most recent last
+ *
+ * @version 1.0
+ */
+
+public class SourceTable {
+    private final int capacity;
+    private final LinkedHashMap<String, Source> sources = new LinkedHashMap<>();
+
+    /**
+     * Download server offering a file
+     * @param host download server
+     * @param fileID hex file ID of the file on that server
+     * @param name file name
+     * @param size file size in bytes
+     */
+    public record Source(InetSocketAddress host, String fileID, String name, long size) {}
+
+    /**
+     * Constructor for SourceTable
+     * @param capacity maximum number of remembered sources
+     */
+    public SourceTable(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Record every result of a response
+     * @param r response
+     */
+    public synchronized void record(Response r) {
+        for (Result result : r.getResultList()) {
+            Source s = new Source(r.getResponseHost(), toHex(result.getFileID()), result.getFileName(),
+                    result.getFileSize());
+            String key = s.host() + "/" + s.fileID();
+            sources.remove(key);
+            sources.put(key, s);
+        }
+        Iterator<String> oldest = sources.keySet().iterator();
+        while (sources.size() > capacity) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Find every server offering the file with an ID. File IDs are derived from file contents, so servers offering
+     * the same ID and size hold the same file whatever they call it.
+     * @param fileID hex file ID
+     * @return sources, empty if no server has offered the file
+     */
+    public synchronized List<Source> find(String fileID) {
+        Source match = null;
+        for (Source s : sources.values()) {
+            if (s.fileID().equalsIgnoreCase(fileID)) {
+                match = s;
+            }
+        }
+        List<Source> found = new ArrayList<>();
+        if (match == null) {
+            return found;
+        }
+        for (Source s : sources.values()) {
+            if (s.fileID().equalsIgnoreCase(fileID) && s.size() == match.size()) {
+                found.add(s);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Format a file ID as hex
+     * @param fileID file ID
+     * @return hex file ID
+     */
+    private static String toHex(byte[] fileID) {
+        return String.format("%08X", ByteBuffer.wrap(fileID).getInt());
+    }
+}
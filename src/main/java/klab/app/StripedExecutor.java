@@ -0,0 +1,62 @@
+package klab.app;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor running tasks on a fixed number of stripes, each a single worker thread. Tasks with the same key always
+ * run on the same stripe, one at a time and in the order they were submitted, while tasks for keys on different
+ * stripes run in parallel. Keying by neighbor keeps each neighbor's messages in order without letting a burst from
+ * one neighbor start more threads. Stripe threads are virtual threads in virtual thread mode.
+ *
+ * @version 1.0
+ */
+
+public class StripedExecutor {
+    private final ThreadPoolExecutor[] stripes;
+
+    /**
+     * Constructor for StripedExecutor
+     * @param stripes number of stripes (worker threads)
+     * @param name prefix of the worker thread names
+     */
+    public StripedExecutor(int stripes, String name) {
+        this.stripes = new ThreadPoolExecutor[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    TaskExecutors.newThreadFactory(name + "-" + i));
+        }
+    }
+
+    /**
+     * Run a task after every task already submitted with the same key
+     * @param key key choosing the stripe, such as the neighbor the message came from
+     * @param task task
+     */
+    public void execute(Object key, Runnable task) {
+        int h = key.hashCode();
+        //spread the high bits so keys with similar hashes still land on different stripes
+        stripes[Math.floorMod(h ^ (h >>> 16), stripes.length)].execute(task);
+    }
+
+    /**
+     * Get the number of tasks waiting on every stripe
+     * @return number of tasks
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            queued += stripe.getQueue().size();
+        }
+        return queued;
+    }
+
+    /**
+     * Get the number of stripes
+     * @return number of stripes
+     */
+    public int getStripes() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,341 @@
+package klab.app;
+
+import klab.serialization.MessageInput;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+
+import static klab.app.Node.logger;
+
+/**
+ * Download of one file from every server offering it. The file is split into chunks that each server fetches with
+ * ranged requests, one chunk at a time over one connection per server, so faster servers take more chunks. A chunk
+ * that fails is returned to the queue for another server, a server that keeps failing is dropped, and once the queue
+ * is empty idle servers also fetch chunks still held by slower ones so one stalled server cannot hold up the end of
+ * the download.
+ *
+ * @version 1.0
+ */
+
+public class SwarmDownload implements Runnable {
+    /**
+     * Failures after which a server is no longer used
+     */
+    private static final int MAX_FAILURES = 3;
+
+    /**
+     * Milliseconds a server may stall before its chunk is given up
+     */
+    private static final int READ_TIMEOUT = 10000;
+
+    private final List<SourceTable.Source> sources;
+    private final File file;
+    private final File part;
+    private final long size;
+    private final int chunkSize;
+    private final int chunks;
+    private final Executor workers;
+    private final BitSet done = new BitSet();
+    private final BitSet inFlight = new BitSet();
+    private final int[] holders; //fetchers working on each chunk
+    private final Deque<Integer> pending = new ArrayDeque<>();
+    private final Set<Socket> connections = new HashSet<>(); //open fetcher connections
+    private int active; //fetchers still running
+    private boolean finished; //true once the download has ended
+    private FileChannel out;
+
+    /**
+     * Constructor for SwarmDownload
+     * @param sources servers offering the file
+     * @param file file to download to
+     * @param chunkSize bytes per chunk
+     * @param workers executor running one fetcher per server
+     */
+    public SwarmDownload(List<SourceTable.Source> sources, File file, int chunkSize, Executor workers) {
+        this.sources = sources;
+        this.file = file;
+        this.part = new File(file.getParentFile(), file.getName() + DownloadService.PART_SUFFIX);
+        this.size = sources.get(0).size();
+        this.chunkSize = chunkSize;
+        this.chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+        this.workers = workers;
+        this.holders = new int[chunks];
+        for (int i = 0; i < chunks; i++) {
+            pending.add(i);
+        }
+    }
+
+    /**
+     * Fetch every chunk and move the finished file into place. The download ends as soon as every chunk is written;
+     * servers still sending duplicates of the last chunks are disconnected rather than waited for.
+     */
+    @Override
+    public void run() {
+        boolean complete;
+        try (RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+            raf.setLength(size);
+            out = raf.getChannel();
+            synchronized (this) {
+                active = sources.size();
+            }
+            for (SourceTable.Source source : sources) {
+                workers.execute(() -> {
+                    try {
+                        fetchFrom(source);
+                    } finally {
+                        fetcherDone();
+                    }
+                });
+            }
+            complete = awaitFinish();
+            if (complete) {
+                out.force(false);
+            }
+        } catch (IOException e) {
+            disconnect();
+            logger.log(Level.WARNING, "Unable to download " + file.getName() + ": " + e.getMessage());
+            discard();
+            return;
+        } catch (InterruptedException e) {
+            disconnect();
+            Thread.currentThread().interrupt();
+            logger.info("Download interrupted: " + e.getMessage());
+            return;
+        }
+        if (!complete) {
+            System.err.println("Unable to download " + file.getName() + ": every source failed");
+            discard();
+            return;
+        }
+        try {
+            if (!ContentID.matches(part, sources.get(0).fileID())) {
+                System.err.println("Download of " + file.getName() + " does not match file ID "
+                        + sources.get(0).fileID());
+                discard();
+                return;
+            }
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Finished downloading " + file + " from " + sources.size() + " sources");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to move downloaded file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wait until every chunk is written or every fetcher has stopped, then disconnect the remaining fetchers
+     * @return true if every chunk was written, false otherwise
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean awaitFinish() throws InterruptedException {
+        synchronized (this) {
+            while (!isComplete() && active > 0) {
+                wait();
+            }
+        }
+        disconnect();
+        return isComplete();
+    }
+
+    /**
+     * Stop every fetcher by closing its connection; fetchers starting later close theirs at once
+     */
+    private void disconnect() {
+        List<Socket> open;
+        synchronized (this) {
+            finished = true;
+            open = new ArrayList<>(connections);
+            connections.clear();
+        }
+        open.forEach(DownloadService::closeQuietly);
+    }
+
+    /**
+     * Delete the partial file, logging any failure
+     */
+    private void discard() {
+        try {
+            Files.deleteIfExists(part.toPath());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to delete " + part + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fetch chunks from one server until no chunk is left or the server has failed too often
+     * @param source server
+     */
+    private void fetchFrom(SourceTable.Source source) {
+        int failures = 0;
+        Integer chunk;
+        Socket s = null;
+        MessageInput in = null;
+        try {
+            while (failures < MAX_FAILURES && (chunk = next()) != null) {
+                try {
+                    if (s == null || s.isClosed()) {
+                        //ranged replies are framed, so one connection carries every chunk until it fails
+                        s = new Socket(source.host().getAddress(), source.host().getPort());
+                        if (!track(s)) {
+                            return;
+                        }
+                        s.setSoTimeout(READ_TIMEOUT);
+                        in = new MessageInput(s.getInputStream());
+                    }
+                    fetch(source, s, in, chunk);
+                    complete(chunk);
+                } catch (IOException | NumberFormatException e) {
+                    if (isFinished()) {
+                        //disconnected because the download has ended
+                        return;
+                    }
+                    failures++;
+                    logger.log(Level.WARNING, "Chunk " + chunk + " from " + source.host() + " failed: "
+                            + e.getMessage());
+                    retry(chunk);
+                    if (s != null) {
+                        untrack(s);
+                    }
+                }
+            }
+        } finally {
+            if (s != null) {
+                untrack(s);
+            }
+        }
+    }
+
+    /**
+     * Remember an open connection so it can be closed once the download ends
+     * @param s connection
+     * @return true if the download is still running, false if it has ended and the connection was closed
+     */
+    private boolean track(Socket s) {
+        synchronized (this) {
+            if (!finished) {
+                connections.add(s);
+                return true;
+            }
+        }
+        DownloadService.closeQuietly(s);
+        return false;
+    }
+
+    /**
+     * Close a connection and forget it
+     * @param s connection
+     */
+    private void untrack(Socket s) {
+        synchronized (this) {
+            connections.remove(s);
+        }
+        DownloadService.closeQuietly(s);
+    }
+
+    /**
+     * Check if the download has ended
+     * @return true if ended, false otherwise
+     */
+    private synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Record that a fetcher has stopped
+     */
+    private synchronized void fetcherDone() {
+        active--;
+        notifyAll();
+    }
+
+    /**
+     * Fetch one chunk with a ranged request and write it at its offset
+     * @param source server
+     * @param s connection to the server
+     * @param in reply stream of the connection
+     * @param chunk chunk number
+     * @throws IOException if the server fails or sends fewer bytes than requested
+     */
+    private void fetch(SourceTable.Source source, Socket s, MessageInput in, int chunk) throws IOException {
+        long offset = (long) chunk * chunkSize;
+        long length = Math.min(chunkSize, size - offset);
+        OutputStream os = s.getOutputStream();
+        os.write(new DownloadRequest(source.fileID(), offset, length).encode().getBytes());
+        String status = DownloadService.readStatus(in, false);
+        if (!status.startsWith("OK ") || Long.parseLong(status.substring(3)) != length) {
+            throw new IOException("Unexpected reply: " + status);
+        }
+        byte[] bytes = in.readBytes((int) length);
+        if (bytes.length != length) {
+            throw new IOException("Premature end of stream");
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            out.write(buf, offset + buf.position());
+        }
+    }
+
+    /**
+     * Take the next chunk to fetch, duplicating a chunk held by another server once none are queued
+     * @return chunk number or null if every chunk is done
+     */
+    private synchronized Integer next() {
+        Integer chunk = pending.poll();
+        if (chunk == null) {
+            int held = inFlight.nextSetBit(0);
+            if (held < 0) {
+                return null;
+            }
+            holders[held]++;
+            return held;
+        }
+        inFlight.set(chunk);
+        holders[chunk]++;
+        return chunk;
+    }
+
+    /**
+     * Mark a chunk as written
+     * @param chunk chunk number
+     */
+    private synchronized void complete(int chunk) {
+        done.set(chunk);
+        inFlight.clear(chunk);
+        notifyAll();
+    }
+
+    /**
+     * Return a failed chunk to the front of the queue unless another server has finished it or is still fetching it
+     * @param chunk chunk number
+     */
+    private synchronized void retry(int chunk) {
+        holders[chunk]--;
+        if (!done.get(chunk) && holders[chunk] == 0 && !pending.contains(chunk)) {
+            inFlight.clear(chunk);
+            pending.addFirst(chunk);
+        }
+    }
+
+    /**
+     * Check if every chunk has been written
+     * @return true if complete, false otherwise
+     */
+    private synchronized boolean isComplete() {
+        return done.cardinality() == chunks;
+    }
+}
@@ -0,0 +1,148 @@
+package klab.app;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+/**
+ * Factory for the executors running the node's tasks. In virtual thread mode every task gets its own virtual thread,
+ * so readers and uploads blocked on sockets cost little memory and no carrier thread. Virtual threads are looked up
+ * at run time so the node still builds and runs on releases without them, falling back to platform threads.
+ *
+ * @version 1.0
+ */
+
+public final class TaskExecutors {
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor (null if the running Java has no virtual threads)
+     */
+    private static final Method VIRTUAL = lookup(Executors.class, "newVirtualThreadPerTaskExecutor");
+
+    /**
+     * Thread.ofVirtual (null if the running Java has no virtual threads)
+     */
+    private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+
+    /**
+     * True once creating virtual threads has failed and platform threads were used instead
+     */
+    private static volatile boolean failed;
+
+    /**
+     * Constructor for TaskExecutors
+     */
+    private TaskExecutors() {}
+
+    /**
+     * Check if virtual threads were requested but cannot be used, either because the running Java has none or
+     * because creating them failed
+     * @return true if platform threads are used instead of the requested virtual threads, false otherwise
+     */
+    public static boolean isFallback() {
+        return NodeConfig.isVirtualThreads() && (VIRTUAL == null || OF_VIRTUAL == null || failed);
+    }
+
+    /**
+     * Create an executor starting a thread per task, reusing idle platform threads when not in virtual thread mode
+     * @return executor
+     */
+    public static ExecutorService newCachedPool() {
+        ExecutorService virtual = newVirtual();
+        return virtual != null ? virtual : Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Create an executor running tasks on a fixed number of platform threads, or a virtual thread per task in
+     * virtual thread mode
+     * @param threads number of platform threads
+     * @return executor
+     */
+    public static ExecutorService newFixedPool(int threads) {
+        ExecutorService virtual = newVirtual();
+        return virtual != null ? virtual : Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Create a factory for named daemon threads, which are virtual threads in virtual thread mode. Executors that
+     * must bound their threads, such as the single thread of each handler stripe, create them through this.
+     * @param name thread name
+     * @return thread factory
+     */
+    public static ThreadFactory newThreadFactory(String name) {
+        ThreadFactory virtual = newVirtualFactory(name);
+        if (virtual != null) {
+            return virtual;
+        }
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Create a factory for named virtual threads if virtual thread mode is selected and available
+     * @param name thread name
+     * @return thread factory or null if platform threads are to be used
+     */
+    private static ThreadFactory newVirtualFactory(String name) {
+        if (!NodeConfig.isVirtualThreads() || OF_VIRTUAL == null) {
+            return null;
+        }
+        try {
+            //Thread.ofVirtual().name(name).factory(), called through the public Thread.Builder.OfVirtual interface
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> type = OF_VIRTUAL.getReturnType();
+            builder = type.getMethod("name", String.class).invoke(builder, name);
+            return (ThreadFactory) type.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            fallBack(e);
+            return null;
+        }
+    }
+
+    /**
+     * Create a virtual thread per task executor if virtual thread mode is selected and available
+     * @return executor or null if platform threads are to be used
+     */
+    private static ExecutorService newVirtual() {
+        if (!NodeConfig.isVirtualThreads() || VIRTUAL == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) VIRTUAL.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            fallBack(e);
+            return null;
+        }
+    }
+
+    /**
+     * Record and log that virtual threads could not be created, so platform threads are used instead
+     * @param e failure
+     */
+    private static void fallBack(Exception e) {
+        failed = true;
+        Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+        //the node's logger may not be set yet, since executors are created while Node is initialized
+        logHandler.getLogger().log(Level.WARNING, "Unable to create virtual threads, using platform threads: "
+                + cause);
+    }
+
+    /**
+     * Look up a method only present on releases with virtual threads
+     * @param type class declaring the method
+     * @param name method name
+     * @return method or null if the running Java has no virtual threads
+     */
+    private static Method lookup(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
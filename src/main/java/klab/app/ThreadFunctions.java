@@ -7,8 +7,6 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.logging.Level;
 
@@ -26,24 +24,23 @@ public class ThreadFunctions {
      * Handle the out search
      *
      * @param command    search value
-     * @param s          socket
-     * @param out        message output
+     * @param p          peer to search
      * @param mf         message factory
-     * @param searchList list of searches
+     * @param searches   outstanding searches
      * @return runnable
      */
 
-    public Runnable handleOutSearch(String command, Socket s, MessageOutput out, MessageFactory mf, HashMap<String,
-            Search> searchList)  {
+    public Runnable handleOutSearch(String command, Peer p, MessageFactory mf, SearchRegistry searches)  {
         return () -> {
             try {
                 logger.info("Searching for: " + command);
                 Search searchMessage = new Search(mf.generateMsgID(), mf.generateTTL(),
                         mf.generateRoutingService(), command);
-                synchronized (out) {
-                    searchMessage.encode(out);
-                }
-                searchList.put(Arrays.toString(searchMessage.getID()), searchMessage);
+                //remember our own search so copies relayed back to us are not answered
+                seenSearches.put(MessageID.of(searchMessage.getID()), Boolean.TRUE);
+                //register before sending so a fast response finds its search
+                searches.register(searchMessage);
+                p.send(searchMessage);
             } catch (IOException e) {
                 logger.log(Level.SEVERE, "Unable to communicate: ", e.getMessage());
             } catch (BadAttributeValueException e) {
@@ -56,48 +53,26 @@ public class ThreadFunctions {
     /**
      * Handle the in messages
      *
-     * @param in           message input
-     * @param out          message output
-     * @param s            socket
-     * @param directory    directory
-     * @param searchList   list of searches
-     * @param responseHost response host
+     * @param peer      peer to read from
+     * @param directory directory
      * @return runnable
      */
 
-    public Runnable handleIn(MessageInput in, MessageOutput out, Socket s, File directory,
-                             HashMap<String, Search> searchList, InetSocketAddress responseHost) {
+    public Runnable handleIn(Peer peer, File directory) {
         return () -> {
-            Message m;
+            Frame frame;
+            Socket s = peer.getSocket();
+            MessageInput in = peer.getIn();
             while (s.isConnected()) {
                 try {
                     logger.info("Waiting for message");
-                    synchronized (in) {
-                        m = Message.decode(in);
-                    }
-                    m.setTTL(m.getTTL() - 1);
-
-                    if (m.getTTL() < 1) {
-                        logger.info("Message TTL expired: " + m);
-                        continue;
-                    }
-
-                    logger.info("Received message: " + m);
-                    if (m instanceof Response) {
-                        logger.info("Processing response" + m);
-                        pool.submit(new ThreadFunctions().handleResponse(m, s, searchList, Node.getMf()));
-                    } else if (m instanceof Search) {
-                        logger.info("Processing search" + m);
-                        pool.submit(new ThreadFunctions().handleSearch(m, out, s, directory, responseHost, Node.getMf()));
-                    }
+                    //this is the only reader of the peer, so the read needs no lock
+                    frame = Frame.read(in);
+                    dispatch(frame, peer, directory);
                 } catch (IOException e) {
                     logger.info("Disconnected from neighbor " + e.getMessage());
-                    try {
-                        s.close();
-                    } catch (IOException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                    pool.shutdownNow();
+                    peerList.remove(peer);
+                    peer.close();
                     break;
                 } catch (BadAttributeValueException e) {
                     logger.log(Level.WARNING, "Invalid message: " + e.getMessage());
@@ -107,30 +82,112 @@ public class ThreadFunctions {
         };
     }
 
+    /**
+     * Decrement the TTL of a received frame and queue its handler behind earlier messages from the same peer.
+     * Expired, duplicate and late frames, searches over the neighbor's rate limit and searches shed under load are
+     * dropped here on the reader without queueing a task.
+     *
+     * @param frame     received frame
+     * @param from      peer the frame was received from
+     * @param directory directory
+     */
+
+    public void dispatch(Frame frame, Peer from, File directory) {
+        if (frame.getTTL() <= 1) {
+            logger.info("Message TTL expired: " + frame);
+            return;
+        }
+        try {
+            frame.setTTL(frame.getTTL() - 1);
+        } catch (BadAttributeValueException e) {
+            logger.log(Level.WARNING, "Invalid message: " + e.getMessage());
+            return;
+        }
+
+        logger.info("Received message: " + frame);
+        if (frame.getMessageType() == 1 && !seenSearches.putIfAbsent(MessageID.of(frame.getID()), Boolean.TRUE)) {
+            logger.info("Dropping duplicate search: " + frame);
+            metrics.duplicateSearches.increment();
+            return;
+        }
+        //a dropped search is forgotten again so a copy arriving later through another neighbor is still handled
+        if (frame.getMessageType() == 1 && from.getSearchLimit().take(1) == 0) {
+            //neither matched nor forwarded, so one neighbor cannot multiply its searches across the overlay
+            logger.info("Dropping search over the neighbor's rate limit: " + frame);
+            metrics.rateLimitedSearches.increment();
+            seenSearches.remove(MessageID.of(frame.getID()));
+            return;
+        }
+        if (frame.getMessageType() == 1 && !admission.admit(frame.getTTL())) {
+            logger.info("Shedding search under load: " + frame);
+            seenSearches.remove(MessageID.of(frame.getID()));
+            return;
+        }
+        if (frame.getMessageType() == 1) {
+            routes.put(MessageID.of(frame.getID()), from);
+        }
+        if (frame.getMessageType() == 2) {
+            MessageID id = MessageID.of(frame.getID());
+            if (searchRegistry.get(id) == null && searchRegistry.isLate(id)) {
+                //nothing is done with a response to an expired search, so it is dropped here without a task
+                logger.info("Received response after search expired: " + frame);
+                metrics.lateResponses.increment();
+                return;
+            }
+            logger.info("Processing response" + frame);
+            execute(from, new ThreadFunctions().handleResponse(frame, from, searchRegistry, Node.getMf()));
+        } else {
+            logger.info("Processing search" + frame);
+            execute(from, new ThreadFunctions().handleSearch(frame, from, directory, Node.getMf()));
+        }
+    }
+
+    /**
+     * Queue a message handler on the sender's stripe, recording how long the message took to handle
+     *
+     * @param from    peer the message was received from
+     * @param handler message handler
+     */
+
+    private void execute(Peer from, Runnable handler) {
+        long arrived = System.nanoTime();
+        handlers.execute(from, () -> {
+            try {
+                handler.run();
+            } finally {
+                admission.record(System.nanoTime() - arrived);
+            }
+        });
+    }
+
     /**
      * Handle the search in
      *
-     * @param m            message
-     * @param out          message output
-     * @param s            socket
-     * @param directory    directory
-     * @param responseHost response host
+     * @param frame     received search frame
+     * @param from      peer the search was received from
+     * @param directory directory
+     * @param mf        message factory
      * @return runnable
      */
 
-    public Runnable handleSearch(Message m, MessageOutput out, Socket s, File directory,
-                                 InetSocketAddress responseHost, MessageFactory mf) {
+    public Runnable handleSearch(Frame frame, Peer from, File directory, MessageFactory mf) {
         return () -> {
+            Socket s = from.getSocket();
             try {
                 //confirming message type
-                Search search = (Search) m;
+                Search search = (Search) frame.getMessage();
 
                 logger.info("Received search: " + search);
 
+                //forward the received frame itself to every neighbor
                 for (Peer p : peerList) {
-                    if (!p.getSocket().equals(s)) {
+                    if (p != from) {
                         logger.info("Forwarding search: " + search + " to " + p.getSocket().getRemoteSocketAddress());
-                        m.encode(p.getOut());
+                        try {
+                            p.forward(frame);
+                        } catch (IOException e) {
+                            logger.log(Level.WARNING, "Unable to forward search: " + e.getMessage());
+                        }
                     }
                 }
 
@@ -139,7 +196,7 @@ public class ThreadFunctions {
                 ServerSocket downloadSocket = socketHandler.getDownloadSocket();
 
                 //creating a response
-                Response response = new Response(m.getID(), m.getTTL(), m.getRoutingService(), new InetSocketAddress(s.getInetAddress(), downloadSocket.getLocalPort()));
+                Response response = new Response(search.getID(), search.getTTL(), search.getRoutingService(), new InetSocketAddress(s.getInetAddress(), downloadSocket.getLocalPort()));
                 logger.info("Created response: " + response + " to " + s.getRemoteSocketAddress() + " for search: " +
                         search.getSearchString());
 
@@ -147,23 +204,19 @@ public class ThreadFunctions {
                 //user looks for "" don't look for files
                 if (search.getSearchString().isEmpty()) {
                     logger.info("Search String '' received sending " + response);
-                    synchronized (out) {
-                        response.encode(out);
-                    }
+                    from.send(response);
                 } else {
                     //check files with matching search string
-                    List<File> results = FileSearch.searchByName(directory, search.getSearchString());
+                    List<IndexedFile> results = catalog.search(search.getSearchString());
                     logger.info("Searching for files with search string: " + search.getSearchString());
 
                     if (!results.isEmpty()) {
                         //if there are files that exist with matching search string
                         //send response with results
-                        mf.generateResults(response, results);
+                        MessageFactory.addResults(response, results);
                         logger.info("Sending response: " + response + " to " + s.getRemoteSocketAddress() + " for search:" +
                                 " " + search.getSearchString());
-                        synchronized (out) {
-                            response.encode(out);
-                        }
+                        from.send(response);
                         logger.log(Level.INFO, "Sending response: " + response + " to "
                                 + s.getRemoteSocketAddress() + " for search: " + search.getSearchString());
                     } else {
@@ -173,7 +226,6 @@ public class ThreadFunctions {
             } catch (IOException e) {
                 if (s.isClosed()) {
                     logger.info("Disconnected from neighbor");
-                    pool.shutdownNow();
                 }
                 logger.log(Level.SEVERE, "Unable to communicate: " + e.getMessage());
             } catch (BadAttributeValueException e) {
@@ -186,35 +238,50 @@ public class ThreadFunctions {
     /**
      * Handle the response in
      *
-     * @param m          message
-     * @param searchList list of searches
+     * @param frame      received response frame
+     * @param from       peer the response was received from
+     * @param searches   outstanding searches
+     * @param mf         message factory
      * @return runnable
      */
 
 
-    public Runnable handleResponse(Message m, Socket s, HashMap<String, Search> searchList, MessageFactory mf) {
+    public Runnable handleResponse(Frame frame, Peer from, SearchRegistry searches, MessageFactory mf) {
         return () -> {
-            Response r = (Response) m;
-
-
             //look for search matching response
-            Search search = searchList.get(Arrays.toString(r.getID()));
+            MessageID id = MessageID.of(frame.getID());
+            Search search = searches.get(id);
             if (search == null) {
-                logger.log(Level.INFO, "Received response with no matching search: " + r);
-                for (Peer p : peerList) {
-                    if (!p.getSocket().equals(s)) {
-                        synchronized (p.getOut()) {
-                            try {
-                                r.encode(p.getOut());
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    }
+                if (searches.isLate(id)) {
+                    //the search expired after the response passed dispatch
+                    logger.log(Level.INFO, "Received response after search expired: " + frame);
+                    metrics.lateResponses.increment();
+                    return;
+                }
+                //relayed responses go back to the neighbor that sent us the search, without decoding their results
+                Peer back = routes.get(id);
+                if (back == null || back == from || !peerList.contains(back)) {
+                    logger.log(Level.INFO, "Received response with no route: " + frame);
+                    metrics.unroutableResponses.increment();
+                    return;
+                }
+                logger.log(Level.INFO, "Routing response: " + frame + " to " + back.getSocket().getRemoteSocketAddress());
+                try {
+                    back.forward(frame);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to forward response: " + e.getMessage());
                 }
                 return;
             }
+            Response r;
+            try {
+                r = (Response) frame.getMessage();
+            } catch (IOException | BadAttributeValueException e) {
+                logger.log(Level.WARNING, "Invalid message: " + e.getMessage());
+                return;
+            }
             logger.log(Level.INFO, "Received response message " + r);
+            sources.record(r);
             logger.log(Level.INFO, "Received response for search: " + search.getSearchString() + " from " + r.getResponseHost());
             System.out.print(mf.printMessage(search, r));
         };
@@ -0,0 +1,127 @@
+package klab.app;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket limiting a rate, for example of bytes sent. Tokens accumulate at the rate up to a burst capacity;
+ * callers waiting for tokens are served in arrival order, so concurrent users taking small amounts at a time share
+ * the rate evenly.
+ *
+ * @version 1.0
+ */
+
+public class TokenBucket {
+    private final long rate; //tokens per second (0 for unlimited)
+    private final long capacity;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private double tokens;
+    private long last;
+
+    /**
+     * Constructor for TokenBucket
+     * @param rate tokens added per second (0 or less for no limit)
+     * @param capacity most tokens that can accumulate
+     */
+    public TokenBucket(long rate, long capacity) {
+        this.rate = Math.max(0, rate);
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.last = System.nanoTime();
+    }
+
+    /**
+     * Check if the bucket limits anything
+     * @return true if there is no limit, false otherwise
+     */
+    public boolean isUnlimited() {
+        return rate == 0;
+    }
+
+    /**
+     * Wait for tokens and take them
+     * @param n tokens wanted
+     * @return tokens taken, n or the capacity if n is larger
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long acquire(long n) throws InterruptedException {
+        if (rate == 0) {
+            return n;
+        }
+        long want = Math.min(n, capacity);
+        lock.lockInterruptibly();
+        try {
+            refill();
+            while (tokens < want) {
+                TimeUnit.NANOSECONDS.sleep((long) Math.ceil((want - tokens) * 1e9 / rate));
+                refill();
+            }
+            tokens -= want;
+            return want;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take up to a number of tokens without waiting
+     * @param max most tokens wanted
+     * @return tokens taken, 0 if none are available
+     */
+    public long take(long max) {
+        if (rate == 0) {
+            return max;
+        }
+        lock.lock();
+        try {
+            refill();
+            long n = Math.min(max, (long) tokens);
+            tokens -= n;
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return tokens that were taken but not used
+     * @param n tokens to return
+     */
+    public void refund(long n) {
+        if (rate == 0 || n <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            tokens = Math.min(capacity, tokens + n);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the time until at least one token is available
+     * @return nanoseconds, 0 if a token is available now
+     */
+    public long nanosUntilAvailable() {
+        if (rate == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            refill();
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1e9 / rate);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add the tokens earned since the last refill
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - last) * (double) rate / 1e9);
+        last = now;
+    }
+}
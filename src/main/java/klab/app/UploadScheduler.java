@@ -0,0 +1,223 @@
+package klab.app;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler granting a fixed number of upload slots. Uploads that cannot start at once wait in a bounded queue
+ * that is served round-robin by requester, so one host opening many connections cannot push others back. Waiting
+ * uploads are told their position whenever it changes and periodically while they wait, and are evicted once they
+ * have waited too long.
+ *
+ * @version 1.0
+ */
+
+public class UploadScheduler {
+    private final int slots;
+    private final int maxQueued;
+    private final long timeoutNanos;
+    private final Map<Object, Deque<Waiting>> waiting = new LinkedHashMap<>(); //requesters in service order
+    private int queued;
+    private int running;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "upload-queue");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Upload managed by the scheduler
+     */
+    public interface Job {
+        /**
+         * Start the upload in a granted slot
+         * @param done to be run exactly once when the upload has finished, successfully or not
+         */
+        void start(Runnable done);
+
+        /**
+         * Report the position of the upload in the queue
+         * @param position position, 1 for the next upload to start
+         */
+        void queued(int position);
+
+        /**
+         * Abandon the upload without starting it
+         * @param reason reason for the requester
+         */
+        void evicted(String reason);
+    }
+
+    /**
+     * Queued upload
+     */
+    private static final class Waiting {
+        private final Job job;
+        private final long since;
+        private int position;
+
+        /**
+         * Constructor for Waiting
+         * @param job queued upload
+         * @param since time the upload was queued
+         */
+        Waiting(Job job, long since) {
+            this.job = job;
+            this.since = since;
+        }
+    }
+
+    /**
+     * Constructor for UploadScheduler
+     * @param slots number of uploads running at once
+     * @param maxQueued number of uploads that may wait for a slot
+     * @param timeoutMillis milliseconds an upload may wait for a slot
+     * @throws IllegalArgumentException if slots or timeout is not positive or maxQueued is negative
+     */
+    public UploadScheduler(int slots, int maxQueued, long timeoutMillis) {
+        if (slots < 1 || maxQueued < 0 || timeoutMillis < 1) {
+            throw new IllegalArgumentException("Invalid upload scheduler settings");
+        }
+        this.slots = slots;
+        this.maxQueued = maxQueued;
+        this.timeoutNanos = timeoutMillis * 1_000_000L;
+        long period = Math.max(1, Math.min(timeoutMillis / 4, 5000));
+        sweeper.scheduleAtFixedRate(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start an upload in a free slot, or queue it behind the uploads already waiting
+     * @param requester identity of the requester, such as its address
+     * @param job upload
+     */
+    public void submit(Object requester, Job job) {
+        List<Runnable> actions = new ArrayList<>();
+        synchronized (this) {
+            if (running < slots && queued == 0) {
+                running++;
+                actions.add(() -> job.start(this::finished));
+            } else if (queued >= maxQueued) {
+                actions.add(() -> job.evicted("Busy"));
+            } else {
+                waiting.computeIfAbsent(requester, k -> new ArrayDeque<>()).add(new Waiting(job, System.nanoTime()));
+                queued++;
+                positions(actions, false);
+            }
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Get the number of running uploads
+     * @return running uploads
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Get the number of queued uploads
+     * @return queued uploads
+     */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Release a slot and start the next upload in line
+     */
+    private void finished() {
+        List<Runnable> actions = new ArrayList<>();
+        synchronized (this) {
+            running--;
+            Waiting next = poll();
+            if (next != null) {
+                running++;
+                actions.add(() -> next.job.start(this::finished));
+                positions(actions, false);
+            }
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Evict uploads that have waited too long and remind the rest of their positions
+     */
+    private void sweep() {
+        List<Runnable> actions = new ArrayList<>();
+        long now = System.nanoTime();
+        synchronized (this) {
+            for (Iterator<Deque<Waiting>> requesters = waiting.values().iterator(); requesters.hasNext(); ) {
+                Deque<Waiting> jobs = requesters.next();
+                for (Iterator<Waiting> it = jobs.iterator(); it.hasNext(); ) {
+                    Waiting w = it.next();
+                    if (now - w.since >= timeoutNanos) {
+                        it.remove();
+                        queued--;
+                        actions.add(() -> w.job.evicted("Queue timeout"));
+                    }
+                }
+                if (jobs.isEmpty()) {
+                    requesters.remove();
+                }
+            }
+            positions(actions, true);
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Take the next upload, rotating the requester it came from to the back of the line
+     * @return next upload or null if none is waiting
+     */
+    private Waiting poll() {
+        Iterator<Map.Entry<Object, Deque<Waiting>>> it = waiting.entrySet().iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        Map.Entry<Object, Deque<Waiting>> first = it.next();
+        Waiting next = first.getValue().poll();
+        it.remove();
+        if (!first.getValue().isEmpty()) {
+            waiting.put(first.getKey(), first.getValue());
+        }
+        queued--;
+        return next;
+    }
+
+    /**
+     * Collect position reports for the waiting uploads in the order they will be served
+     * @param actions list receiving the reports
+     * @param all true to report every position, false to report only changed positions
+     */
+    private void positions(List<Runnable> actions, boolean all) {
+        List<Iterator<Waiting>> rounds = new ArrayList<>();
+        for (Deque<Waiting> jobs : waiting.values()) {
+            rounds.add(jobs.iterator());
+        }
+        int position = 0;
+        boolean more = true;
+        while (more) {
+            more = false;
+            for (Iterator<Waiting> it : rounds) {
+                if (it.hasNext()) {
+                    more = true;
+                    Waiting w = it.next();
+                    int p = ++position;
+                    if (all || w.position != p) {
+                        w.position = p;
+                        actions.add(() -> w.job.queued(p));
+                    }
+                }
+            }
+        }
+    }
+}
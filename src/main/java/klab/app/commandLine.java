@@ -1,9 +1,6 @@
 package klab.app;
 
-import klab.serialization.MessageOutput;
-
 import java.io.File;
-import java.io.IOException;
 import java.util.List;
 import java.util.Scanner;
 
@@ -45,11 +42,21 @@ public class commandLine implements Runnable {
                         Node.ch.connectToPeer(args, this.directory);
                     }
                     break;
+                case "stats":
+                    System.out.print("Peers: " + Node.peerList.size() + System.lineSeparator()
+                            + "Outstanding searches: " + Node.searchRegistry.size() + System.lineSeparator()
+                            + "Uploads running: " + Node.DS.getScheduler().getRunning() + System.lineSeparator()
+                            + "Uploads queued: " + Node.DS.getScheduler().getQueued() + System.lineSeparator()
+                            + Node.metrics + Node.admission);
+                    break;
                 case "download":
                     logger.info("Downloading file");
                     String[] downloadArgs = user.nextLine().split(" ");
-                    if (downloadArgs.length != 5) {
-                        System.err.println("Bad Download command: Expect download <download node> <download port> <file ID> <file name>");
+                    if (downloadArgs.length == 3) {
+                        Node.ch.swarmDownload(downloadArgs, this.directory);
+                    } else if (downloadArgs.length < 5 || downloadArgs.length % 2 == 0) {
+                        System.err.println("Bad Download command: Expect download <download node> <download port> <file ID> <file name>"
+                                + " [<file ID> <file name> ...] or download <file ID> <file name>");
                     } else {
                         Node.ch.downloadFile(downloadArgs, this.directory);
                     }
@@ -60,14 +67,8 @@ public class commandLine implements Runnable {
                         break;
                     } else {
                         for (Peer p : Node.peerList) {
-                            try {
-                                logger.info("Searching peer: " + p.getSocket().getInetAddress() + ":" + p.getSocket().getPort() + " to search for " + command);
-                                Node.pool.submit(Node.tf.handleOutSearch(command, p.getSocket(),
-                                        new MessageOutput(p.getSocket().getOutputStream()),
-                                        Node.getMf(), Node.searchList));
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
+                            logger.info("Searching peer: " + p.getSocket().getInetAddress() + ":" + p.getSocket().getPort() + " to search for " + command);
+                            Node.pool.submit(Node.tf.handleOutSearch(command, p, Node.getMf(), Node.searchRegistry));
                         }
                     }
                     break;
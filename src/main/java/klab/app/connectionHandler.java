@@ -1,16 +1,14 @@
 package klab.app;
 
 import klab.serialization.MessageInput;
-import klab.serialization.MessageOutput;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
@@ -36,6 +34,10 @@ public class connectionHandler {
             String peerIp = args[1];
             int peerPort = Integer.parseInt(args[2]);
 
+            if (selectorLoop != null) {
+                selectorLoop.connect(new InetSocketAddress(peerIp, peerPort));
+                return;
+            }
             Socket s = new Socket(peerIp, peerPort);
             establishConnection(s, directory);
         } catch (IOException e) {
@@ -74,12 +76,10 @@ public class connectionHandler {
 
 
     public void establishConnection(Socket s, File directory) throws IOException {
-        synchronized (peerList) {
-            peerList.add(new Peer(s));
-        }
-        pool.submit(tf.handleIn(new MessageInput(s.getInputStream()),
-                new MessageOutput(s.getOutputStream()), s, directory, Node.searchList,
-                new InetSocketAddress(s.getInetAddress(), s.getPort())));
+        Peer peer = new Peer(s);
+        peerList.add(peer);
+        pool.submit(tf.handleIn(peer, directory));
+        pool.submit(peer.writer());
         logger.info("Connected to peer: " + s.getInetAddress() + ":" + s.getPort() + " Peer List " +
                 "Size: " + peerList.size());
     }
@@ -96,16 +96,11 @@ public class connectionHandler {
         return () -> {
             while (!downloadSocket.isClosed()) {
                 try {
-                    logger.info("Uploading file: inside of listenForDownload");
                     Socket s = downloadSocket.accept();
                     logger.info("Download Connection accepted" + s.getInetAddress() + ":" + s.getPort());
-                    OutputStream out = s.getOutputStream();
+                    //a client that is slow to send its request must not hold up the next accept
                     MessageInput in = new MessageInput(s.getInputStream());
-                    String fileID = in.readString();
-                    logger.info("Downloading file: " + fileID);
-                    logger.info("Uploading file: inside of listenForDownload before thread");
-                    DS.getExecutor().execute(DS.upload(out, fileID, s, directory));
-                    logger.info("Uploading file: inside of listenForDownload after thread");
+                    pool.submit(() -> DS.serve(in, s, directory));
                 } catch (IOException e) {
                     logger.log(Level.SEVERE, "Unable to communicate: ", e.getMessage());
                 }
@@ -139,4 +134,28 @@ public class connectionHandler {
         }
     }
 
+    /**
+     * swarmDownload method for downloading a file from every node that offered it
+     *
+     * @param args      arguments
+     * @param directory directory
+     */
+
+    public void swarmDownload(String[] args, File directory) {
+        List<SourceTable.Source> found = sources.find(args[1]);
+        if (found.isEmpty()) {
+            System.err.println("No sources for file ID " + args[1] + ": search for the file first");
+            return;
+        }
+        logger.info("Downloading " + args[2] + " from " + found.size() + " sources");
+        try {
+            DS.getExecutor().submit(new SwarmDownload(found, new File(directory, args[2]),
+                    NodeConfig.getChunkSize(), pool)).get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            logger.info("Download interrupted: " + e.getMessage());
+        }
+    }
+
 }
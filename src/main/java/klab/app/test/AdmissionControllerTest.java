@@ -0,0 +1,73 @@
+package klab.app.test;
+
+import klab.app.AdmissionController;
+import klab.app.NodeMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControllerTest {
+    /**
+     * Longer than the controller's adjustment period
+     */
+    static final long PERIOD = 150;
+
+    @Test
+    public void testAdmitWhenIdle() throws InterruptedException {
+        NodeMetrics metrics = new NodeMetrics();
+        AdmissionController admission = new AdmissionController(() -> 0, 10, 1000, metrics);
+        Thread.sleep(PERIOD);
+        assertTrue(admission.admit(1));
+        assertTrue(admission.admit(255));
+        assertEquals(0, metrics.shedSearches.sum());
+    }
+
+    @Test
+    public void testCutoffRisesUnderQueueing() throws InterruptedException {
+        NodeMetrics metrics = new NodeMetrics();
+        AtomicInteger depth = new AtomicInteger(10);
+        AdmissionController admission = new AdmissionController(depth::get, 10, 1000, metrics);
+        Thread.sleep(PERIOD);
+        //the cutoff rises one step per period, shedding the searches with the least TTL left first
+        assertFalse(admission.admit(1));
+        assertTrue(admission.admit(2));
+        Thread.sleep(PERIOD);
+        assertFalse(admission.admit(2));
+        assertTrue(admission.admit(3));
+        assertEquals(2, metrics.shedSearches.sum());
+
+        depth.set(0);
+        Thread.sleep(3 * PERIOD);
+        //the cutoff falls by every period that passed
+        assertTrue(admission.admit(1));
+        assertEquals(2, metrics.shedSearches.sum());
+    }
+
+    @Test
+    public void testCutoffRisesUnderLatency() throws InterruptedException {
+        AdmissionController admission = new AdmissionController(() -> 1, 10, 100, new NodeMetrics());
+        admission.record(500_000_000L);
+        Thread.sleep(PERIOD);
+        assertFalse(admission.admit(1));
+        assertTrue(admission.admit(2));
+    }
+
+    @Test
+    public void testStaleLatencyIgnored() throws InterruptedException {
+        AdmissionController admission = new AdmissionController(() -> 0, 10, 100, new NodeMetrics());
+        admission.record(500_000_000L);
+        Thread.sleep(PERIOD);
+        assertTrue(admission.admit(1));
+    }
+
+    @Test
+    public void testShedAllWhenFlooded() {
+        NodeMetrics metrics = new NodeMetrics();
+        AdmissionController admission = new AdmissionController(() -> 40, 10, 1000, metrics);
+        assertFalse(admission.admit(255));
+        assertFalse(admission.admit(1));
+        assertEquals(2, metrics.shedSearches.sum());
+    }
+}
@@ -0,0 +1,63 @@
+package klab.app.test;
+
+import klab.app.DownloadRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadRequestTest {
+    @Test
+    public void testParseLegacy() {
+        DownloadRequest r = DownloadRequest.parse("0A1B2C3D");
+        assertEquals("0A1B2C3D", r.getFileID());
+        assertFalse(r.isRanged());
+        assertEquals(0, r.getOffset());
+        assertEquals(-1, r.getLength());
+        assertEquals("0A1B2C3D\n", r.encode());
+    }
+
+    @Test
+    public void testParseOffset() {
+        DownloadRequest r = DownloadRequest.parse("0A1B2C3D 1024");
+        assertTrue(r.isRanged());
+        assertEquals(1024, r.getOffset());
+        assertEquals(-1, r.getLength());
+        assertEquals("0A1B2C3D 1024\n", r.encode());
+    }
+
+    @Test
+    public void testParseRange() {
+        DownloadRequest r = DownloadRequest.parse("0A1B2C3D 0 4096");
+        assertTrue(r.isRanged());
+        assertEquals(0, r.getOffset());
+        assertEquals(4096, r.getLength());
+        assertEquals("0A1B2C3D 0 4096\n", r.encode());
+    }
+
+    @Test
+    public void testEncodeParse() {
+        DownloadRequest r = new DownloadRequest("0A1B2C3D", 7, 9);
+        String line = r.encode();
+        DownloadRequest parsed = DownloadRequest.parse(line.substring(0, line.length() - 1));
+        assertEquals(r.getFileID(), parsed.getFileID());
+        assertEquals(r.getOffset(), parsed.getOffset());
+        assertEquals(r.getLength(), parsed.getLength());
+        assertTrue(parsed.isRanged());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "", " ", "0A1B2C3D ", "0A1B2C3D x", "0A1B2C3D 1 y", "0A1B2C3D -1", "0A1B2C3D 0 -2",
+            "0A1B2C3D 1 2 3", " 0A1B2C3D" })
+    public void testParseInvalid(String line) {
+        assertThrows(IllegalArgumentException.class, () -> DownloadRequest.parse(line));
+    }
+
+    @Test
+    public void testInvalidRange() {
+        assertThrows(IllegalArgumentException.class, () -> new DownloadRequest("0A1B2C3D", -1, 10));
+        assertThrows(IllegalArgumentException.class, () -> new DownloadRequest("0A1B2C3D", 0, -2));
+        assertThrows(IllegalArgumentException.class, () -> new DownloadRequest(null));
+    }
+}
@@ -0,0 +1,156 @@
+package klab.app.test;
+
+import klab.app.DownloadServer;
+import klab.app.DownloadService;
+import klab.app.FileCatalog;
+import klab.app.NodeConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadServerTest {
+    @TempDir
+    File dir;
+
+    ServerSocketChannel server;
+    byte[] contents;
+    String fileID;
+
+    /**
+     * Share one file and start a download server on an ephemeral loopback port
+     */
+    void start(int size) throws IOException {
+        contents = new byte[size];
+        new Random(7).nextBytes(contents);
+        Files.write(new File(dir, "data.bin").toPath(), contents);
+        FileCatalog catalog = new FileCatalog(dir);
+        fileID = String.format("%08X", catalog.search("data.bin").get(0).getFileIDValue());
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread t = new Thread(new DownloadServer(server, new DownloadService(), catalog), "download-server");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    Socket connect() throws IOException {
+        Socket s = new Socket(InetAddress.getLoopbackAddress(), server.socket().getLocalPort());
+        s.setSoTimeout(10000);
+        return s;
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) {
+                throw new IOException("Premature end of stream after " + line);
+            }
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    static byte[] readBytes(InputStream in, int n) throws IOException {
+        byte[] b = in.readNBytes(n);
+        assertEquals(n, b.length);
+        return b;
+    }
+
+    /**
+     * Read a reply status line and the blank line after it
+     */
+    static String readStatus(InputStream in) throws IOException {
+        String status = readLine(in);
+        assertEquals("", readLine(in));
+        return status;
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        System.clearProperty(NodeConfig.PEER_UPLOAD_RATE);
+        System.clearProperty(NodeConfig.DOWNLOAD_REQUEST_TIMEOUT);
+    }
+
+    @Test
+    public void testPipelinedRangedRequests() throws IOException {
+        start(5000);
+        try (Socket s = connect()) {
+            OutputStream out = s.getOutputStream();
+            InputStream in = s.getInputStream();
+            //both requests go out before either reply is read
+            out.write((fileID + " 0 100\n" + fileID + " 4000\n").getBytes());
+            assertEquals("OK 100", readStatus(in));
+            assertArrayEquals(Arrays.copyOfRange(contents, 0, 100), readBytes(in, 100));
+            assertEquals("OK 1000", readStatus(in));
+            assertArrayEquals(Arrays.copyOfRange(contents, 4000, 5000), readBytes(in, 1000));
+
+            //the connection is still open, and a request in the original form ends it
+            out.write((fileID + "\n").getBytes());
+            assertEquals("OK", readStatus(in));
+            assertArrayEquals(contents, readBytes(in, 5000));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testRangedErrorKeepsConnection() throws IOException {
+        start(100);
+        try (Socket s = connect()) {
+            OutputStream out = s.getOutputStream();
+            InputStream in = s.getInputStream();
+            out.write(("00000000 0\n" + fileID + " 200\n" + fileID + " 90 5\n").getBytes());
+            assertEquals("ERROR", readStatus(in));
+            assertEquals("Bad File ID: 00000000", readLine(in));
+            assertEquals("ERROR", readStatus(in));
+            assertTrue(readLine(in).startsWith("Bad Range"));
+            assertEquals("OK 5", readStatus(in));
+            assertArrayEquals(Arrays.copyOfRange(contents, 90, 95), readBytes(in, 5));
+        }
+    }
+
+    @Test
+    public void testRequestTimeout() throws IOException {
+        System.setProperty(NodeConfig.DOWNLOAD_REQUEST_TIMEOUT, "100");
+        start(100);
+        try (Socket s = connect()) {
+            long start = System.nanoTime();
+            //the server closes a connection that sends no request
+            assertEquals(-1, s.getInputStream().read());
+            assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        }
+    }
+
+    @Test
+    public void testRateLimitedResumes() throws IOException {
+        System.setProperty(NodeConfig.PEER_UPLOAD_RATE, "100000");
+        start(200000);
+        try (Socket s = connect()) {
+            long start = System.nanoTime();
+            s.getOutputStream().write((fileID + " 0\n").getBytes());
+            InputStream in = s.getInputStream();
+            assertEquals("OK 200000", readStatus(in));
+            byte[] received = readBytes(in, 200000);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            assertArrayEquals(contents, received);
+            //the first burst goes at once, the rest at the connection's rate
+            assertTrue(millis >= 1000, "took " + millis + " ms");
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package klab.app.test;
+
+import klab.app.FileIndex;
+import klab.app.IndexedFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileIndexTest {
+    @TempDir
+    File dir;
+
+    static IndexedFile file(String name, long size) {
+        return new IndexedFile(new File(name), size, 0, new byte[] { 0, 0, 0, (byte) size });
+    }
+
+    static List<String> names(List<IndexedFile> files) {
+        List<String> names = new ArrayList<>();
+        for (IndexedFile f : files) {
+            names.add(f.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Substring match over every file, the way searches were answered before the index
+     */
+    static List<String> scan(List<IndexedFile> files, String query) {
+        List<IndexedFile> sorted = new ArrayList<>(files);
+        sorted.sort((a, b) -> Long.compare(a.getSize(), b.getSize()));
+        List<String> names = new ArrayList<>();
+        for (IndexedFile f : sorted) {
+            if (f.getName().contains(query)) {
+                names.add(f.getName());
+            }
+        }
+        return names;
+    }
+
+    @Test
+    public void testSortedBySize() {
+        FileIndex index = FileIndex.of(List.of(file("c", 30), file("a", 10), file("b", 20)));
+        assertEquals(List.of("a", "b", "c"), names(index.getFiles()));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testIntersection() {
+        FileIndex index = FileIndex.of(List.of(file("alphabet.txt", 3), file("alphabeta.txt", 1),
+                file("beta.txt", 2), file("gamma.txt", 4)));
+        assertEquals(List.of("alphabeta.txt", "alphabet.txt"), names(index.search("phab")));
+        assertEquals(List.of("alphabeta.txt", "beta.txt", "alphabet.txt"), names(index.search("bet")));
+        assertEquals(List.of("gamma.txt"), names(index.search("mma.t")));
+        assertEquals(Collections.emptyList(), index.search("delta"));
+    }
+
+    @Test
+    public void testTrigramsWithoutSubstring() {
+        //every trigram of the query is in the name, but not next to each other
+        FileIndex index = FileIndex.of(List.of(file("abcXbcd", 1)));
+        assertEquals(Collections.emptyList(), index.search("abcd"));
+        assertEquals(List.of("abcXbcd"), names(index.search("cXb")));
+    }
+
+    @Test
+    public void testShortQueries() {
+        FileIndex index = FileIndex.of(List.of(file("ab", 2), file("b", 1), file("cd", 3)));
+        assertEquals(List.of("b", "ab"), names(index.search("b")));
+        assertEquals(List.of("ab"), names(index.search("ab")));
+        assertEquals(List.of("b", "ab", "cd"), names(index.search("")));
+        assertEquals(Collections.emptyList(), index.search("x"));
+    }
+
+    @Test
+    public void testCaseSensitive() {
+        FileIndex index = FileIndex.of(List.of(file("Readme.TXT", 1), file("readme.txt", 2)));
+        assertEquals(List.of("Readme.TXT"), names(index.search("Readme")));
+        assertEquals(List.of("readme.txt"), names(index.search("readme")));
+        assertEquals(List.of("Readme.TXT"), names(index.search("TXT")));
+        assertEquals(Collections.emptyList(), index.search("README"));
+    }
+
+    @Test
+    public void testMatchesScan() {
+        Random random = new Random(42);
+        String alphabet = "abcAB.-";
+        List<IndexedFile> files = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int j = random.nextInt(12) + 1; j > 0; j--) {
+                name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            files.add(file(name.toString() + i, i));
+        }
+        FileIndex index = FileIndex.of(files);
+        FileIndex unindexed = FileIndex.unindexed(index.getFiles());
+        for (int i = 0; i < 500; i++) {
+            StringBuilder query = new StringBuilder();
+            for (int j = random.nextInt(6); j > 0; j--) {
+                query.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String q = query.toString();
+            assertEquals(scan(files, q), names(index.search(q)), q);
+            assertEquals(scan(files, q), names(unindexed.search(q)), q);
+        }
+    }
+
+    @Test
+    public void testFindByID() {
+        IndexedFile a = file("a", 1);
+        IndexedFile b = file("b", 2);
+        FileIndex index = FileIndex.of(List.of(a, b));
+        assertSame(b, index.findByID(2));
+        assertNull(index.findByID(3));
+        assertSame(a, FileIndex.unindexed(index.getFiles()).findByID(1));
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        Files.writeString(new File(dir, "song.mp3").toPath(), "la la");
+        Files.writeString(new File(dir, "notes.txt").toPath(), "my notes");
+        Files.writeString(new File(dir, "video.mp4.part").toPath(), "partial");
+        new File(dir, "sub").mkdir();
+        FileIndex index = FileIndex.build(dir);
+        assertEquals(List.of("song.mp3", "notes.txt"), names(index.getFiles()));
+        assertEquals(List.of("song.mp3"), names(index.search("song")));
+        assertEquals(Collections.emptyList(), index.search("video"));
+    }
+
+    @Test
+    public void testRebuildUpdatesAndRemoves() throws Exception {
+        File kept = new File(dir, "kept.txt");
+        File changed = new File(dir, "changed.txt");
+        File removed = new File(dir, "removed.txt");
+        Files.writeString(kept.toPath(), "same");
+        Files.writeString(changed.toPath(), "old");
+        Files.writeString(removed.toPath(), "gone");
+        FileIndex before = FileIndex.build(dir);
+        Map<String, IndexedFile> known = new HashMap<>();
+        for (IndexedFile f : before.getFiles()) {
+            known.put(f.getName(), f);
+        }
+
+        Files.writeString(changed.toPath(), "new contents");
+        assertTrue(changed.setLastModified(known.get("changed.txt").getLastModified() + 2000));
+        assertTrue(removed.delete());
+        Files.writeString(new File(dir, "added.txt").toPath(), "added");
+        FileIndex after = FileIndex.build(dir, known);
+
+        assertEquals(3, after.size());
+        //unchanged files are reused rather than hashed again
+        assertSame(known.get("kept.txt"), after.search("kept").get(0));
+        IndexedFile updated = after.search("changed").get(0);
+        assertEquals(12, updated.getSize());
+        assertNotEquals(known.get("changed.txt").getFileIDValue(), updated.getFileIDValue());
+        assertNull(after.findByID(known.get("removed.txt").getFileIDValue()));
+        assertEquals(Collections.emptyList(), after.search("removed"));
+        assertEquals(1, after.search("added").size());
+    }
+}
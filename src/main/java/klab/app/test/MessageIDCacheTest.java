@@ -0,0 +1,74 @@
+package klab.app.test;
+
+import klab.app.MessageID;
+import klab.app.MessageIDCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageIDCacheTest {
+    static MessageID id(int n) {
+        byte[] id = new byte[15];
+        id[14] = (byte) n;
+        return MessageID.of(id);
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        MessageIDCache<String> cache = new MessageIDCache<>(4, 60000);
+        assertTrue(cache.putIfAbsent(id(1), "a"));
+        assertFalse(cache.putIfAbsent(id(1), "b"));
+        assertEquals("a", cache.get(id(1)));
+        assertTrue(cache.putIfAbsent(id(2), "c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testPutReplaces() {
+        MessageIDCache<String> cache = new MessageIDCache<>(4, 60000);
+        cache.put(id(1), "a");
+        cache.put(id(1), "b");
+        assertEquals("b", cache.get(id(1)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testRemove() {
+        MessageIDCache<String> cache = new MessageIDCache<>(4, 60000);
+        cache.put(id(1), "a");
+        assertEquals("a", cache.remove(id(1)));
+        assertNull(cache.remove(id(1)));
+        assertTrue(cache.putIfAbsent(id(1), "b"));
+    }
+
+    @Test
+    public void testEvictsOldestAtCapacity() {
+        MessageIDCache<String> cache = new MessageIDCache<>(2, 60000);
+        cache.put(id(1), "a");
+        cache.put(id(2), "b");
+        cache.put(id(3), "c");
+        assertEquals(2, cache.size());
+        assertNull(cache.get(id(1)));
+        assertEquals("b", cache.get(id(2)));
+        assertEquals("c", cache.get(id(3)));
+        assertTrue(cache.putIfAbsent(id(1), "a"));
+        assertNull(cache.get(id(2)));
+    }
+
+    @Test
+    public void testExpires() throws InterruptedException {
+        MessageIDCache<String> cache = new MessageIDCache<>(4, 50);
+        cache.put(id(1), "a");
+        Thread.sleep(100);
+        assertNull(cache.get(id(1)));
+        assertTrue(cache.putIfAbsent(id(1), "b"));
+        assertEquals("b", cache.get(id(1)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new MessageIDCache<String>(0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new MessageIDCache<String>(1, 0));
+    }
+}
@@ -0,0 +1,55 @@
+package klab.app.test;
+
+import klab.app.MessageID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageIDTest {
+    static byte[] id() {
+        return new byte[] { 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0A, 0x0B, 0x0C, 0x0D, 0x0E,
+                (byte) 0xFF };
+    }
+
+    @Test
+    public void testPacksEveryByte() {
+        assertEquals("0102030405060708090A0B0C0D0EFF", MessageID.of(id()).toString());
+        assertEquals("000000000000000000000000000000", MessageID.of(new byte[15]).toString());
+    }
+
+    @Test
+    public void testEquals() {
+        assertEquals(MessageID.of(id()), MessageID.of(id()));
+        assertEquals(MessageID.of(id()).hashCode(), MessageID.of(id()).hashCode());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 6, 7, 14 })
+    public void testDiffersInOneByte(int i) {
+        byte[] other = id();
+        other[i] ^= 1;
+        assertNotEquals(MessageID.of(id()), MessageID.of(other));
+        assertNotEquals(MessageID.of(id()).hashCode(), MessageID.of(other).hashCode());
+    }
+
+    @Test
+    public void testCopiesInput() {
+        byte[] bytes = id();
+        MessageID packed = MessageID.of(bytes);
+        bytes[0] = 0;
+        assertEquals(MessageID.of(id()), packed);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 14, 16 })
+    public void testBadLength(int length) {
+        assertThrows(IllegalArgumentException.class, () -> MessageID.of(new byte[length]));
+    }
+
+    @Test
+    public void testNull() {
+        assertThrows(IllegalArgumentException.class, () -> MessageID.of(null));
+    }
+}
@@ -0,0 +1,107 @@
+package klab.app.test;
+
+import klab.app.OutboundQueue;
+import klab.serialization.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboundQueueTest {
+    static Frame search(int n) throws BadAttributeValueException, IOException {
+        byte[] id = new byte[15];
+        id[0] = (byte) n;
+        return Frame.of(new Search(id, 4, RoutingService.BREADTHFIRST, "q" + n));
+    }
+
+    static Frame response(int n) throws BadAttributeValueException, IOException {
+        byte[] id = new byte[15];
+        id[0] = (byte) n;
+        return Frame.of(new Response(id, 4, RoutingService.BREADTHFIRST, new InetSocketAddress("1.2.3.4", 5678)));
+    }
+
+    @Test
+    public void testSearchesBeforeResponses() throws Exception {
+        OutboundQueue queue = new OutboundQueue(10, OutboundQueue.Overflow.DROP_NEWEST);
+        Frame r = response(1);
+        Frame s = search(2);
+        queue.offer(r, false);
+        queue.offer(s, false);
+        assertSame(s, queue.poll());
+        assertSame(r, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testResponseAfterSearchRun() throws Exception {
+        OutboundQueue queue = new OutboundQueue(20, OutboundQueue.Overflow.DROP_NEWEST);
+        Frame r = response(0);
+        queue.offer(r, false);
+        Frame[] searches = new Frame[10];
+        for (int i = 0; i < searches.length; i++) {
+            searches[i] = search(i + 1);
+            queue.offer(searches[i], false);
+        }
+        for (int i = 0; i < 8; i++) {
+            assertSame(searches[i], queue.poll());
+        }
+        assertSame(r, queue.poll());
+        assertSame(searches[8], queue.poll());
+        assertSame(searches[9], queue.take());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        OutboundQueue queue = new OutboundQueue(2, OutboundQueue.Overflow.DROP_NEWEST);
+        Frame a = search(1);
+        Frame b = response(2);
+        Frame c = search(3);
+        assertNull(queue.offer(a, true));
+        assertNull(queue.offer(b, true));
+        assertSame(c, queue.offer(c, false));
+        assertEquals(2, queue.size());
+        assertSame(a, queue.poll());
+        assertSame(b, queue.poll());
+    }
+
+    @Test
+    public void testDropOldestPrefersForwarded() throws Exception {
+        OutboundQueue queue = new OutboundQueue(3, OutboundQueue.Overflow.DROP_OLDEST);
+        Frame own = search(1);
+        Frame forwardedResponse = response(2);
+        Frame forwardedSearch = search(3);
+        queue.offer(own, false);
+        queue.offer(forwardedResponse, true);
+        queue.offer(forwardedSearch, true);
+        assertSame(forwardedResponse, queue.offer(search(4), false));
+        assertSame(forwardedSearch, queue.offer(search(5), false));
+        assertEquals(3, queue.size());
+        assertSame(own, queue.poll());
+    }
+
+    @Test
+    public void testDropOldestWithoutForwarded() throws Exception {
+        OutboundQueue queue = new OutboundQueue(2, OutboundQueue.Overflow.DROP_OLDEST);
+        Frame r = response(1);
+        Frame s = search(2);
+        queue.offer(r, false);
+        queue.offer(s, false);
+        assertSame(r, queue.offer(search(3), false));
+        assertEquals(2, queue.size());
+        assertSame(s, queue.poll());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        OutboundQueue queue = new OutboundQueue(2, OutboundQueue.Overflow.DROP_OLDEST);
+        queue.offer(search(1), false);
+        queue.close();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.take());
+        assertThrows(IOException.class, () -> queue.offer(search(2), false));
+    }
+}
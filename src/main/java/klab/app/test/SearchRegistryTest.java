@@ -0,0 +1,93 @@
+package klab.app.test;
+
+import klab.app.MessageID;
+import klab.app.NodeMetrics;
+import klab.app.SearchRegistry;
+import klab.serialization.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchRegistryTest {
+    static Search search(int n) throws BadAttributeValueException {
+        byte[] id = new byte[15];
+        id[0] = (byte) n;
+        return new Search(id, 4, RoutingService.BREADTHFIRST, "q" + n);
+    }
+
+    static MessageID id(Search s) {
+        return MessageID.of(s.getID());
+    }
+
+    /**
+     * Wait until a condition holds, failing after two seconds
+     */
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        NodeMetrics metrics = new NodeMetrics();
+        SearchRegistry registry = new SearchRegistry(4, 60000, metrics);
+        Search s = search(1);
+        registry.register(s);
+        assertSame(s, registry.get(id(s)));
+        assertEquals(1, registry.size());
+        assertFalse(registry.isLate(id(s)));
+        assertNull(registry.get(id(search(2))));
+        assertFalse(registry.isLate(id(search(2))));
+    }
+
+    @Test
+    public void testEvictOldest() throws Exception {
+        NodeMetrics metrics = new NodeMetrics();
+        SearchRegistry registry = new SearchRegistry(2, 60000, metrics);
+        Search a = search(1);
+        Search b = search(2);
+        Search c = search(3);
+        registry.register(a);
+        registry.register(b);
+        registry.register(c);
+        assertEquals(2, registry.size());
+        assertNull(registry.get(id(a)));
+        assertSame(b, registry.get(id(b)));
+        assertSame(c, registry.get(id(c)));
+        assertEquals(1, metrics.evictedSearches.sum());
+        assertTrue(registry.isLate(id(a)));
+        //answering the question counts nothing
+        assertTrue(registry.isLate(id(a)));
+        assertEquals(0, metrics.lateResponses.sum());
+    }
+
+    @Test
+    public void testReregisterIsNotLate() throws Exception {
+        SearchRegistry registry = new SearchRegistry(1, 60000, new NodeMetrics());
+        Search a = search(1);
+        registry.register(a);
+        registry.register(search(2));
+        registry.register(a);
+        assertSame(a, registry.get(id(a)));
+        assertFalse(registry.isLate(id(a)));
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        NodeMetrics metrics = new NodeMetrics();
+        SearchRegistry registry = new SearchRegistry(4, 100, metrics);
+        Search s = search(1);
+        registry.register(s);
+        await(() -> registry.get(id(s)) == null);
+        assertEquals(0, registry.size());
+        assertEquals(1, metrics.expiredSearches.sum());
+        assertEquals(0, metrics.evictedSearches.sum());
+        //the retired ID is forgotten after another lifetime
+        await(() -> !registry.isLate(id(s)));
+    }
+}
@@ -0,0 +1,97 @@
+package klab.app.test;
+
+import klab.app.StripedExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StripedExecutorTest {
+    static final int TASKS = 2000;
+
+    @Test
+    public void testOrderPerKey() throws InterruptedException {
+        StripedExecutor executor = new StripedExecutor(4, "test");
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        String[] keys = { "peer-a", "peer-b" };
+        for (String key : keys) {
+            seen.put(key, Collections.synchronizedList(new ArrayList<>()));
+        }
+        CountDownLatch finished = new CountDownLatch(TASKS * keys.length);
+        for (int i = 0; i < TASKS; i++) {
+            //tasks for the two keys are interleaved
+            for (String key : keys) {
+                int n = i;
+                executor.execute(key, () -> {
+                    if (n % 100 == 0) {
+                        Thread.yield();
+                    }
+                    seen.get(key).add(n);
+                    finished.countDown();
+                });
+            }
+        }
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        for (String key : keys) {
+            List<Integer> order = seen.get(key);
+            assertEquals(TASKS, order.size());
+            for (int i = 0; i < TASKS; i++) {
+                assertEquals(i, order.get(i), key);
+            }
+        }
+        assertEquals(0, executor.getQueued());
+    }
+
+    @Test
+    public void testSameKeyRunsSerially() throws InterruptedException {
+        StripedExecutor executor = new StripedExecutor(4, "test");
+        Object key = new Object();
+        Map<String, Integer> running = new ConcurrentHashMap<>();
+        List<Boolean> overlapped = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            executor.execute(key, () -> {
+                overlapped.add(running.merge("key", 1, Integer::sum) > 1);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.merge("key", -1, Integer::sum);
+                finished.countDown();
+            });
+        }
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertFalse(overlapped.contains(true));
+    }
+
+    @Test
+    public void testDifferentStripesRunInParallel() throws InterruptedException {
+        StripedExecutor executor = new StripedExecutor(2, "test");
+        //keys 0 and 1 hash to different stripes
+        CountDownLatch both = new CountDownLatch(2);
+        CountDownLatch finished = new CountDownLatch(2);
+        for (int key = 0; key < 2; key++) {
+            executor.execute(key, () -> {
+                both.countDown();
+                try {
+                    //only returns if the other stripe's task is running at the same time
+                    if (both.await(5, TimeUnit.SECONDS)) {
+                        finished.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(2, executor.getStripes());
+    }
+}
@@ -0,0 +1,192 @@
+package klab.app.test;
+
+import klab.app.IndexedFile;
+import klab.app.SourceTable;
+import klab.app.SwarmDownload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SwarmDownloadTest {
+    static final int SIZE = 10000;
+    static final int CHUNK = 1000;
+
+    @TempDir
+    File dir;
+
+    byte[] contents;
+    String fileID;
+    final List<ServerSocket> servers = new ArrayList<>();
+    final ExecutorService workers = Executors.newCachedThreadPool();
+
+    /**
+     * How a test server answers ranged requests
+     */
+    enum Behavior { GOOD, FAIL_MID_CHUNK, STALL }
+
+    /**
+     * Test server answering ranged requests with the test contents, counting the requests it receives
+     */
+    final class Server implements Runnable {
+        final ServerSocket socket;
+        final Behavior behavior;
+        final AtomicInteger requests = new AtomicInteger();
+
+        Server(Behavior behavior) throws IOException {
+            this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.behavior = behavior;
+            servers.add(socket);
+            Thread t = new Thread(this);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        SourceTable.Source source(String id) {
+            return new SourceTable.Source(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    socket.getLocalPort()), id, "data.bin", SIZE);
+        }
+
+        @Override
+        public void run() {
+            while (!socket.isClosed()) {
+                try {
+                    Socket s = socket.accept();
+                    workers.execute(() -> serve(s));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        void serve(Socket s) {
+            try (s) {
+                InputStream in = s.getInputStream();
+                OutputStream out = s.getOutputStream();
+                String line;
+                while ((line = readLine(in)) != null) {
+                    requests.incrementAndGet();
+                    String[] parts = line.split(" ");
+                    int offset = Integer.parseInt(parts[1]);
+                    int length = Integer.parseInt(parts[2]);
+                    if (behavior == Behavior.STALL) {
+                        //hold the chunk until the client gives up on it
+                        while (in.read() != -1) {
+                            continue;
+                        }
+                        return;
+                    }
+                    out.write(("OK " + length + "\n\n").getBytes());
+                    if (behavior == Behavior.FAIL_MID_CHUNK) {
+                        out.write(contents, offset, length / 2);
+                        return;
+                    }
+                    //slow enough that every source gets chunks
+                    Thread.sleep(10);
+                    out.write(contents, offset, length);
+                }
+            } catch (IOException | InterruptedException e) {
+                //client disconnected
+            }
+        }
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) {
+                return null;
+            }
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Create the contents to download and their file ID
+     */
+    void contents() throws IOException {
+        contents = new byte[SIZE];
+        new Random(3).nextBytes(contents);
+        File original = new File(dir, "original.bin");
+        Files.write(original.toPath(), contents);
+        fileID = String.format("%08X", new IndexedFile(original).getFileIDValue());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (ServerSocket s : servers) {
+            s.close();
+        }
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void testOneSourceFailsMidChunk() throws IOException {
+        contents();
+        Server good = new Server(Behavior.GOOD);
+        Server bad = new Server(Behavior.FAIL_MID_CHUNK);
+        File file = new File(dir, "data.bin");
+        new SwarmDownload(List.of(good.source(fileID), bad.source(fileID)), file, CHUNK, workers).run();
+        assertArrayEquals(contents, Files.readAllBytes(file.toPath()));
+        assertFalse(new File(dir, "data.bin.part").exists());
+        //the failing server's chunks were reassigned after it failed
+        assertTrue(bad.requests.get() > 0);
+        assertTrue(good.requests.get() >= SIZE / CHUNK);
+    }
+
+    @Test
+    public void testStalledSourceDuplicated() throws IOException {
+        contents();
+        Server good = new Server(Behavior.GOOD);
+        Server stalled = new Server(Behavior.STALL);
+        File file = new File(dir, "data.bin");
+        long start = System.nanoTime();
+        new SwarmDownload(List.of(stalled.source(fileID), good.source(fileID)), file, CHUNK, workers).run();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertArrayEquals(contents, Files.readAllBytes(file.toPath()));
+        //the stalled chunk was fetched again from the other server rather than waited for
+        assertTrue(millis < 5000, "took " + millis + " ms");
+        assertEquals(1, stalled.requests.get());
+    }
+
+    @Test
+    public void testContentMismatch() throws IOException {
+        contents();
+        Server good = new Server(Behavior.GOOD);
+        String wrongID = String.format("%08X", Integer.parseUnsignedInt(fileID, 16) ^ 1);
+        File file = new File(dir, "data.bin");
+        new SwarmDownload(List.of(good.source(wrongID)), file, CHUNK, workers).run();
+        assertFalse(file.exists());
+        assertFalse(new File(dir, "data.bin.part").exists());
+    }
+
+    @Test
+    public void testEverySourceFails() throws IOException {
+        contents();
+        Server bad = new Server(Behavior.FAIL_MID_CHUNK);
+        File file = new File(dir, "data.bin");
+        new SwarmDownload(List.of(bad.source(fileID)), file, CHUNK, workers).run();
+        assertFalse(file.exists());
+        assertFalse(new File(dir, "data.bin.part").exists());
+        assertEquals(3, bad.requests.get());
+    }
+}
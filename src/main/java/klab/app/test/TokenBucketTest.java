@@ -0,0 +1,122 @@
+package klab.app.test;
+
+import klab.app.DownloadService;
+import klab.app.TokenBucket;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testStartsFull() {
+        TokenBucket bucket = new TokenBucket(1, 100);
+        assertFalse(bucket.isUnlimited());
+        assertEquals(100, bucket.take(1000));
+        assertEquals(0, bucket.take(1));
+    }
+
+    @Test
+    public void testPartialTake() {
+        TokenBucket bucket = new TokenBucket(1, 100);
+        assertEquals(60, bucket.take(60));
+        assertEquals(40, bucket.take(60));
+        assertEquals(0, bucket.take(60));
+    }
+
+    @Test
+    public void testRefund() {
+        TokenBucket bucket = new TokenBucket(1, 100);
+        assertEquals(100, bucket.take(100));
+        bucket.refund(30);
+        bucket.refund(0);
+        bucket.refund(-5);
+        assertEquals(30, bucket.take(100));
+    }
+
+    @Test
+    public void testRefundCappedAtBurst() {
+        TokenBucket bucket = new TokenBucket(1, 100);
+        bucket.refund(50);
+        assertEquals(100, bucket.take(1000));
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1000);
+        bucket.take(1000);
+        assertTrue(bucket.nanosUntilAvailable() > 0);
+        Thread.sleep(200);
+        long refilled = bucket.take(1000);
+        assertTrue(refilled >= 150 && refilled <= 400, "refilled " + refilled);
+    }
+
+    @Test
+    public void testRefillCappedAtBurst() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100000, 50);
+        Thread.sleep(50);
+        assertEquals(50, bucket.take(1000));
+    }
+
+    @Test
+    public void testAcquireWaits() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 100);
+        bucket.take(100);
+        long start = System.nanoTime();
+        assertEquals(100, bucket.acquire(100));
+        long waited = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(waited >= 80, "waited " + waited + " ms");
+        //larger requests are capped at the burst
+        assertEquals(100, bucket.acquire(500));
+    }
+
+    @Test
+    public void testUnlimited() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(0, 10);
+        assertTrue(bucket.isUnlimited());
+        assertEquals(1_000_000, bucket.take(1_000_000));
+        assertEquals(1_000_000, bucket.acquire(1_000_000));
+        assertEquals(0, bucket.nanosUntilAvailable());
+        assertTrue(new TokenBucket(-1, 10).isUnlimited());
+    }
+
+    @Test
+    public void testTransferTakesEveryLimit() throws Exception {
+        Path file = dir.resolve("data");
+        Files.write(file, new byte[1000]);
+        //the connection limit goes first; a smaller grant from the shared limit is returned to it
+        TokenBucket peer = new TokenBucket(1, 2000);
+        TokenBucket global = new TokenBucket(1_000_000, 500);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(1000, DownloadService.transfer(channel, 0, 1000, Channels.newChannel(out), peer, global));
+        }
+        assertEquals(1000, out.size());
+        assertEquals(1000, peer.take(2000));
+    }
+
+    @Test
+    public void testTransferRefundsUnwritten() throws Exception {
+        Path file = dir.resolve("data");
+        Files.write(file, new byte[1000]);
+        TokenBucket peer = new TokenBucket(1, 5000);
+        TokenBucket global = new TokenBucket(1, 5000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        //the file is shorter than the request, so only the bytes written are paid for
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(1000, DownloadService.transfer(channel, 0, 3000, Channels.newChannel(out), peer, global));
+        }
+        assertEquals(1000, out.size());
+        assertEquals(4000, peer.take(5000));
+        assertEquals(4000, global.take(5000));
+    }
+}
@@ -0,0 +1,128 @@
+package klab.app.test;
+
+import klab.app.UploadScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadSchedulerTest {
+    /**
+     * Job recording what the scheduler tells it
+     */
+    static class TestJob implements UploadScheduler.Job {
+        final List<String> events = new ArrayList<>();
+        Runnable done;
+        int position;
+
+        @Override
+        public synchronized void start(Runnable done) {
+            this.done = done;
+            events.add("start");
+        }
+
+        @Override
+        public synchronized void queued(int position) {
+            this.position = position;
+            events.add("QUEUED " + position);
+        }
+
+        @Override
+        public synchronized void evicted(String reason) {
+            events.add("evicted " + reason);
+        }
+
+        synchronized List<String> events() {
+            return new ArrayList<>(events);
+        }
+    }
+
+    @Test
+    public void testStartsInFreeSlot() {
+        UploadScheduler scheduler = new UploadScheduler(2, 4, 60000);
+        TestJob a = new TestJob();
+        TestJob b = new TestJob();
+        scheduler.submit("a", a);
+        scheduler.submit("a", b);
+        assertEquals(List.of("start"), a.events());
+        assertEquals(List.of("start"), b.events());
+        assertEquals(2, scheduler.getRunning());
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    public void testQueuedRoundRobin() {
+        UploadScheduler scheduler = new UploadScheduler(1, 10, 60000);
+        TestJob running = new TestJob();
+        TestJob a1 = new TestJob();
+        TestJob a2 = new TestJob();
+        TestJob b1 = new TestJob();
+        scheduler.submit("a", running);
+        scheduler.submit("a", a1);
+        scheduler.submit("a", a2);
+        assertEquals(1, a1.position);
+        assertEquals(2, a2.position);
+        //a later requester is served before the second upload of an earlier one
+        scheduler.submit("b", b1);
+        assertEquals(1, a1.position);
+        assertEquals(2, b1.position);
+        assertEquals(3, a2.position);
+        assertEquals(List.of("QUEUED 2", "QUEUED 3"), a2.events());
+        assertEquals(3, scheduler.getQueued());
+
+        running.done.run();
+        assertEquals("start", a1.events().get(a1.events().size() - 1));
+        assertEquals(1, b1.position);
+        assertEquals(2, a2.position);
+
+        a1.done.run();
+        assertEquals("start", b1.events().get(b1.events().size() - 1));
+        assertEquals(1, a2.position);
+
+        b1.done.run();
+        assertEquals("start", a2.events().get(a2.events().size() - 1));
+        assertEquals(1, scheduler.getRunning());
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    public void testQueueFull() {
+        UploadScheduler scheduler = new UploadScheduler(1, 1, 60000);
+        TestJob running = new TestJob();
+        TestJob queued = new TestJob();
+        TestJob rejected = new TestJob();
+        scheduler.submit("a", running);
+        scheduler.submit("b", queued);
+        scheduler.submit("c", rejected);
+        assertEquals(List.of("QUEUED 1"), queued.events());
+        assertEquals(List.of("evicted Busy"), rejected.events());
+        assertEquals(1, scheduler.getQueued());
+    }
+
+    @Test
+    public void testQueueTimeout() throws InterruptedException {
+        UploadScheduler scheduler = new UploadScheduler(1, 4, 50);
+        TestJob running = new TestJob();
+        TestJob waiting = new TestJob();
+        scheduler.submit("a", running);
+        scheduler.submit("b", waiting);
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (!waiting.events().contains("evicted Queue timeout")) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(5);
+        }
+        assertEquals(0, scheduler.getQueued());
+        running.done.run();
+        assertFalse(waiting.events().contains("start"));
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new UploadScheduler(0, 1, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new UploadScheduler(1, -1, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new UploadScheduler(1, 1, 0));
+    }
+}
@@ -0,0 +1,22 @@
+package klab.serialization;
+
+/**
+ * Flush policy for a buffered MessageOutput
+ *
+ * @version 1.0
+ */
+
+public enum FlushPolicy {
+    /**
+     * Write each frame to the stream as soon as it is complete
+     */
+    EVERY_FRAME,
+    /**
+     * Write buffered frames once a given number of frames is complete
+     */
+    EVERY_N_FRAMES,
+    /**
+     * Write buffered frames only when flush is called (e.g. when the writer has nothing else to send)
+     */
+    ON_IDLE
+}
@@ -0,0 +1,262 @@
+package klab.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Wire encoding of a message that can be written to any number of outputs without re-serializing it. The header
+ * is parsed when the frame is created; the payload is kept as raw bytes and only decoded on the first call to
+ * getMessage, so a relay can route and forward a frame without ever materializing its search string or results.
+ *
+ * @version 1.0
+ */
+public final class Frame {
+    /**
+     * Offset of the TTL in the message header
+     */
+    private static final int TTL_OFFSET = Message.ID_LENGTH + 1;
+
+    /**
+     * Offset of the routing service in the message header
+     */
+    private static final int ROUTING_OFFSET = Message.ID_LENGTH + 2;
+
+    private final byte[] bytes; //encoded message (header followed by payload)
+    private final int type; //message type
+    private final RoutingService routingService; //routing service of the message
+    private volatile Message message; //decoded message (null until first requested)
+
+    /**
+     * Constructs a Frame around encoded bytes
+     *
+     * @param bytes   encoded message
+     * @param message decoded message (null if not decoded yet)
+     * @throws BadAttributeValueException if the header holds an invalid type or routing service
+     */
+
+    private Frame(byte[] bytes, Message message) throws BadAttributeValueException {
+        this.bytes = bytes;
+        this.type = bytes[0] & 0xFF;
+        if (type != 1 && type != 2) {
+            throw new BadAttributeValueException("Invalid message type", "type");
+        }
+        try {
+            this.routingService = RoutingService.getRoutingService(bytes[ROUTING_OFFSET] & 0xFF);
+        } catch (IOException e) {
+            throw new BadAttributeValueException("Invalid Routing Service Code", "Routing Service Code", e);
+        }
+        this.message = message;
+    }
+
+    /**
+     * Encode a message once into a frame
+     *
+     * @param m message to encode
+     * @return frame holding the encoded message
+     * @throws IOException if m is null or I/O problem
+     */
+
+    public static Frame of(Message m) throws IOException {
+        if (m == null) {
+            throw new IOException("Message is null");
+        }
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream(Message.HEADER_LENGTH + m.getLength());
+        m.encode(new MessageOutput(bOut));
+        try {
+            return new Frame(bOut.toByteArray(), m);
+        } catch (BadAttributeValueException e) {
+            throw new IOException("Unable to encode message", e);
+        }
+    }
+
+    /**
+     * Wrap a complete encoded message (header and payload) without decoding its payload
+     *
+     * @param bytes encoded message; the frame takes ownership of the array
+     * @return frame over the bytes
+     * @throws BadAttributeValueException if the bytes are not a complete frame or the header fails validation
+     */
+
+    public static Frame wrap(byte[] bytes) throws BadAttributeValueException {
+        if (bytes == null || bytes.length < Message.HEADER_LENGTH
+                || bytes.length != Message.HEADER_LENGTH + readLength(bytes)) {
+            throw new BadAttributeValueException("Frame length is invalid", "length");
+        }
+        return new Frame(bytes, null);
+    }
+
+    /**
+     * Read the next frame from an input source without decoding its payload
+     *
+     * @param in input source
+     * @return frame read from the input source
+     * @throws IOException                if in is null or I/O problem
+     * @throws BadAttributeValueException if the header fails validation
+     */
+
+    public static Frame read(MessageInput in) throws IOException, BadAttributeValueException {
+        if (in == null) {
+            throw new IOException("MessageInput is null");
+        }
+        byte[] header = new byte[Message.HEADER_LENGTH];
+        in.readFully(header, 0, header.length);
+        byte[] bytes = Arrays.copyOf(header, Message.HEADER_LENGTH + readLength(header));
+        in.readFully(bytes, Message.HEADER_LENGTH, bytes.length - Message.HEADER_LENGTH);
+        return new Frame(bytes, null);
+    }
+
+    /**
+     * Get the decoded message, decoding the payload on the first call
+     *
+     * @return decoded message
+     * @throws IOException                if I/O problem
+     * @throws BadAttributeValueException if the payload fails validation
+     */
+
+    public Message getMessage() throws IOException, BadAttributeValueException {
+        Message m = message;
+        if (m == null) {
+            int length = getLength();
+            m = Message.decode(new MessageInput(bytes, Message.HEADER_LENGTH, length), type, getID(), getTTL(),
+                    routingService, length);
+            message = m;
+        }
+        return m;
+    }
+
+    /**
+     * Write the frame to an output sink as one complete frame
+     *
+     * @param out output sink
+     * @throws IOException if out is null or I/O problem
+     */
+
+    public void writeTo(MessageOutput out) throws IOException {
+        if (out == null) {
+            throw new IOException("MessageOutput is null");
+        }
+        out.write(bytes);
+        out.endFrame();
+    }
+
+    /**
+     * Get a read-only view of the frame with its own position, sharing the encoded bytes
+     *
+     * @return read-only buffer positioned at the start of the frame
+     */
+
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get message type
+     *
+     * @return message type
+     */
+
+    public int getMessageType() {
+        return type;
+    }
+
+    /**
+     * Get ID
+     *
+     * @return copy of the ID of the message
+     */
+
+    public byte[] getID() {
+        return Arrays.copyOfRange(bytes, 1, 1 + Message.ID_LENGTH);
+    }
+
+    /**
+     * Get TTL
+     *
+     * @return TTL of the encoded message
+     */
+
+    public int getTTL() {
+        return bytes[TTL_OFFSET] & 0xFF;
+    }
+
+    /**
+     * Patch the TTL in place. The TTL is the only part of a frame that may change, and it must be set before the
+     * frame is handed to any output.
+     *
+     * @param ttl new TTL
+     * @return this Frame with new TTL
+     * @throws BadAttributeValueException if ttl is invalid
+     */
+
+    public Frame setTTL(int ttl) throws BadAttributeValueException {
+        if (ttl < 0 || ttl > 255) {
+            throw new BadAttributeValueException("ttl is invalid", "ttl");
+        }
+        bytes[TTL_OFFSET] = (byte) ttl;
+        Message m = message;
+        if (m != null) {
+            m.setTTL(ttl);
+        }
+        return this;
+    }
+
+    /**
+     * Get routing service
+     *
+     * @return routing service
+     */
+
+    public RoutingService getRoutingService() {
+        return routingService;
+    }
+
+    /**
+     * Get the payload length from the header
+     *
+     * @return payload length
+     */
+
+    public int getLength() {
+        return readLength(bytes);
+    }
+
+    /**
+     * Get the size of the encoded message
+     *
+     * @return number of bytes in the frame
+     */
+
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * Returns a String representation of the header
+     *
+     * @return String representation
+     */
+
+    @Override
+    public String toString() {
+        StringBuilder frameString = new StringBuilder(type == 1 ? "Search" : "Response").append(" frame: ID=");
+        for (int i = 1; i <= Message.ID_LENGTH; i++) {
+            frameString.append(String.format("%02X", bytes[i]));
+        }
+        frameString.append(" TTL=").append(getTTL()).append(" Routing=").append(routingService)
+                .append(" Length=").append(getLength());
+        return frameString.toString();
+    }
+
+    /**
+     * Read the payload length from a message header
+     *
+     * @param header message header
+     * @return payload length
+     */
+
+    private static int readLength(byte[] header) {
+        return ((header[Message.HEADER_LENGTH - 2] & 0xFF) << 8) | (header[Message.HEADER_LENGTH - 1] & 0xFF);
+    }
+}
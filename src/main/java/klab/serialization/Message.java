@@ -18,7 +18,12 @@ abstract public class Message {
     /**
      * Length of the message ID
      */
-    private static final int ID_LENGTH = 15;
+    static final int ID_LENGTH = 15;
+
+    /**
+     * Length of the message header (type, ID, TTL, routing service and length)
+     */
+    static final int HEADER_LENGTH = ID_LENGTH + 5;
 
 
     /**
@@ -101,6 +106,26 @@ abstract public class Message {
         RoutingService rs = RoutingService.getRoutingService(routingService);
         int length = in.readUnsignedShort();
 
+        return decode(in, type, id, ttl, rs, length);
+
+    }
+
+    /**
+     * Deserializes the payload of a message whose header has already been read
+     *
+     * @param in deserialization input source positioned at the payload
+     * @param type message type
+     * @param id message ID
+     * @param ttl message ttl
+     * @param rs message routing service
+     * @param length payload length
+     * @return a specific message resulting from deserialization
+     * @throws IOException                if I/O problem occurs
+     * @throws BadAttributeValueException if any parsed value fails validation
+     */
+
+    static Message decode(MessageInput in, int type, byte[] id, int ttl, RoutingService rs, int length)
+            throws IOException, BadAttributeValueException {
         Message m;
         switch (type) {
             case 1:
@@ -114,7 +139,6 @@ abstract public class Message {
                 throw new BadAttributeValueException("Invalid message type", "type");
         }
         return m;
-
     }
 
 
@@ -0,0 +1,88 @@
+package klab.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Incremental message decoder that can be fed arbitrary chunks of a byte stream. Bytes are copied out of each chunk
+ * exactly once; a message is returned as soon as its last byte has been consumed.
+ *
+ * @version 1.0
+ */
+public class MessageDecoder {
+    /**
+     * Offset of the payload length in the message header
+     */
+    private static final int LENGTH_OFFSET = Message.HEADER_LENGTH - 2;
+
+    private final byte[] header = new byte[Message.HEADER_LENGTH]; //header of the message being decoded
+    private int headerRead; //number of header bytes received
+    private byte[] frame; //frame being decoded (null while reading the header)
+    private int frameRead; //number of frame bytes received
+
+    /**
+     * Consume bytes from the chunk until a message is complete or the chunk is exhausted. Bytes following a
+     * complete message are left in the chunk for the next call.
+     *
+     * @param chunk bytes received from the stream
+     * @return the decoded message or null if more bytes are needed
+     * @throws IOException                if chunk is null or I/O problem
+     * @throws BadAttributeValueException if a complete message fails validation; the message is discarded and
+     *                                    decoding resumes with the next message
+     */
+
+    public Message decode(ByteBuffer chunk) throws IOException, BadAttributeValueException {
+        Frame frame = decodeFrame(chunk);
+        return frame == null ? null : frame.getMessage();
+    }
+
+    /**
+     * Consume bytes from the chunk until a frame is complete or the chunk is exhausted, validating only its
+     * header. Bytes following a complete frame are left in the chunk for the next call.
+     *
+     * @param chunk bytes received from the stream
+     * @return the complete frame or null if more bytes are needed
+     * @throws IOException                if chunk is null
+     * @throws BadAttributeValueException if a complete frame has an invalid header; the frame is discarded and
+     *                                    decoding resumes with the next frame
+     */
+
+    public Frame decodeFrame(ByteBuffer chunk) throws IOException, BadAttributeValueException {
+        if (chunk == null) {
+            throw new IOException("chunk is null");
+        }
+        if (frame == null) {
+            int n = Math.min(chunk.remaining(), header.length - headerRead);
+            chunk.get(header, headerRead, n);
+            headerRead += n;
+            if (headerRead < header.length) {
+                return null;
+            }
+            frame = Arrays.copyOf(header, header.length
+                    + (((header[LENGTH_OFFSET] & 0xFF) << 8) | (header[LENGTH_OFFSET + 1] & 0xFF)));
+            frameRead = header.length;
+        }
+        int n = Math.min(chunk.remaining(), frame.length - frameRead);
+        chunk.get(frame, frameRead, n);
+        frameRead += n;
+        if (frameRead < frame.length) {
+            return null;
+        }
+
+        byte[] bytes = frame;
+        headerRead = 0;
+        frame = null;
+        return Frame.wrap(bytes);
+    }
+
+    /**
+     * Check if the decoder holds part of a message
+     *
+     * @return true if a message has been started but not completed, false otherwise
+     */
+
+    public boolean isPartial() {
+        return headerRead > 0;
+    }
+}
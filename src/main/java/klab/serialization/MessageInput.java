@@ -4,7 +4,12 @@ package klab.serialization;
 import klab.serialization.BadAttributeValueException;
 
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * Deserialization input source This should ONLY include general methods for parsing. Do not include protocol-specific
@@ -16,7 +21,16 @@ import java.nio.charset.StandardCharsets;
 
 public class MessageInput {
     private static final byte DELIM = '\n'; //Delimiter to determine end of a stream
-    private DataInputStream in; // Input Stream to read from
+    private static final int BUFFER_SIZE = 8192; //Initial size of the read buffer
+    private static final long DELIMS = 0x0A0A0A0A0A0A0A0AL; //Delimiter repeated in every byte of a word
+    private static final long LOW_BITS = 0x0101010101010101L; //Lowest bit of every byte of a word
+    private static final long HIGH_BITS = 0x8080808080808080L; //Highest bit of every byte of a word
+    private static final VarHandle WORDS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN); //Reads 8 bytes of an array as one word
+    private final InputStream in; // Input Stream to read from (null if reading from an array)
+    private byte[] buf; // Read buffer
+    private int pos; // Position of the next unread byte in buf
+    private int limit; // End of the valid bytes in buf
 
     /**
      * Constructs a new input source from an InputStream
@@ -30,7 +44,29 @@ public class MessageInput {
         if (in == null) {
             throw new NullPointerException("InputStream is null");
         }
-        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.in = in;
+        this.buf = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Constructs a new input source reading directly from a byte array without copying it
+     *
+     * @param b byte input source
+     * @param off offset of the first byte to read
+     * @param len number of bytes to read
+     * @throws NullPointerException if b is null
+     * @throws IndexOutOfBoundsException if off or len is out of range
+     */
+
+    public MessageInput(byte[] b, int off, int len) throws NullPointerException {
+        if (b == null) {
+            throw new NullPointerException("byte array is null");
+        }
+        Objects.checkFromIndexSize(off, len, b.length);
+        this.in = null;
+        this.buf = b;
+        this.pos = off;
+        this.limit = off + len;
     }
 
 
@@ -44,8 +80,13 @@ public class MessageInput {
     public byte[] read4bytes() throws IOException {
         byte b[] = new byte[4];
 
+        if (available(4)) {
+            System.arraycopy(buf, pos, b, 0, 4);
+            pos += 4;
+            return b;
+        }
         for (int i = 0; i < 4; i++) {
-            b[i] = (byte) in.read();
+            b[i] = (byte) read();
         }
         return b;
     }
@@ -62,7 +103,7 @@ public class MessageInput {
     public long readUnsignedInt() throws IOException {
         long l = 0;
         for (int i = 0; i < 4; i++) {
-            l |= (in.read() & 0xFFL) << (24 - (i * 8));
+            l |= (read() & 0xFFL) << (24 - (i * 8));
         }
         return l;
     }
@@ -77,16 +118,19 @@ public class MessageInput {
 
 
     public String readString() throws IOException {
-        ByteArrayOutputStream buff = new ByteArrayOutputStream();
-        int nextByte;
-
-        while ((nextByte = in.read()) != DELIM) {
-            if (nextByte == -1) {
+        int scanned = pos;
+        int end;
+        while ((end = indexOfDelim(buf, scanned, limit)) < 0) {
+            int searched = limit - pos;
+            if (!fill()) {
                 throw new IOException("Premature end of stream");
             }
-            buff.write(nextByte);
+            //fill may move the unread bytes, so resume scanning relative to the new position
+            scanned = pos + searched;
         }
-        return buff.toString(StandardCharsets.US_ASCII);
+        String s = new String(buf, pos, end - pos, StandardCharsets.US_ASCII);
+        pos = end + 1;
+        return s;
     }
 
 
@@ -100,17 +144,17 @@ public class MessageInput {
      */
 
     public String readLengthString(int length) throws IOException, BadAttributeValueException {
-        ByteArrayOutputStream buff = new ByteArrayOutputStream();
-        int nextByte;
-
-        for (int i = 0; i < length; i++) {
-            nextByte = in.read();
-            if (nextByte == -1) {
+        if (length < 0) {
+            throw new BadAttributeValueException("length is negative", "length");
+        }
+        while (limit - pos < length) {
+            if (!fill()) {
                 throw new IOException("Premature end of stream");
             }
-            buff.write(nextByte);
         }
-        return buff.toString(StandardCharsets.US_ASCII.name());
+        String s = new String(buf, pos, length, StandardCharsets.US_ASCII);
+        pos += length;
+        return s;
     }
 
 
@@ -123,7 +167,10 @@ public class MessageInput {
 
     public int read() throws IOException {
         try{
-            return in.read();
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            return buf[pos++] & 0xFF;
         } catch (IOException e) {
             throw new IOException("Premature end of stream");
         }
@@ -138,10 +185,15 @@ public class MessageInput {
 
     public int readUnsignedShort() throws IOException {
         try{
-            return in.readUnsignedShort();
+            if (!available(2)) {
+                throw new EOFException();
+            }
         } catch (IOException e) {
             throw new IOException("Premature end of stream");
         }
+        int s = ((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF);
+        pos += 2;
+        return s;
     }
 
     /**
@@ -154,13 +206,50 @@ public class MessageInput {
 
     public byte[] readBytes(int length) throws IOException {
          try{
-             return in.readNBytes(length);
+             int buffered = Math.min(length, limit - pos);
+             byte[] b = Arrays.copyOfRange(buf, pos, pos + buffered);
+             pos += buffered;
+             if (buffered == length || in == null) {
+                 return b;
+             }
+             //read the rest straight from the stream instead of through the buffer
+             byte[] rest = in.readNBytes(length - buffered);
+             if (buffered == 0) {
+                 return rest;
+             }
+             b = Arrays.copyOf(b, buffered + rest.length);
+             System.arraycopy(rest, 0, b, buffered, rest.length);
+             return b;
          } catch (IOException e) {
              throw new IOException("Premature end of stream");
          }
     }
 
 
+    /**
+     * read exactly len bytes from inputStream into an array
+     *
+     * @param b array to read into
+     * @param off offset in the array of the first byte
+     * @param len number of bytes to read
+     * @throws IOException if there is an I/O problem or the stream ends first
+     */
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        try{
+            int buffered = Math.min(len, limit - pos);
+            System.arraycopy(buf, pos, b, off, buffered);
+            pos += buffered;
+            if (buffered < len && (in == null || in.readNBytes(b, off + buffered, len - buffered) < len - buffered)) {
+                throw new EOFException();
+            }
+        } catch (IOException e) {
+            throw new IOException("Premature end of stream");
+        }
+    }
+
+
     /**
      * determines size of inputStream
      *
@@ -170,11 +259,97 @@ public class MessageInput {
 
 
     public int size() throws IOException {
-        return in.available();
+        return (limit - pos) + (in == null ? 0 : in.available());
     }
 
+    /**
+     * transfer the remaining bytes to an output stream
+     *
+     * @param out output stream
+     * @throws IOException if there is an I/O problem
+     * @return number of bytes transferred
+     */
+
     public long transferTo(OutputStream out) throws IOException {
-        return in.transferTo(out);
+        long n = limit - pos;
+        out.write(buf, pos, limit - pos);
+        pos = limit;
+        return in == null ? n : n + in.transferTo(out);
+    }
+
+    /**
+     * make sure a number of bytes is buffered
+     *
+     * @param n number of bytes
+     * @throws IOException if there is an I/O problem
+     * @return true if n bytes are buffered, false if the stream ended first
+     */
+
+    private boolean available(int n) throws IOException {
+        while (limit - pos < n) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * read more bytes from the stream into the buffer, compacting or growing it if it is full
+     *
+     * @throws IOException if there is an I/O problem
+     * @return true if bytes were read, false if the stream ended
+     */
+
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        if (pos == limit) {
+            pos = 0;
+            limit = 0;
+        } else if (limit == buf.length) {
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            } else {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n == -1) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /**
+     * find the first delimiter in a range of an array, testing 8 bytes per step
+     *
+     * @param b array to search
+     * @param from first index to search
+     * @param to index after the last index to search
+     * @return index of the first delimiter or -1 if there is none
+     */
+
+    private static int indexOfDelim(byte[] b, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) WORDS.get(b, i) ^ DELIMS;
+            //high bit set in every byte that was a delimiter (bytes after the first may be false positives)
+            long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (b[i] == DELIM) {
+                return i;
+            }
+        }
+        return -1;
     }
 
 }
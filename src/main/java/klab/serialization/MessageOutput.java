@@ -13,7 +13,17 @@ import java.nio.ByteOrder;
  * @version 1.0
  */
 public class MessageOutput {
+    /**
+     * Number of buffered bytes that forces a flush regardless of policy
+     */
+    private static final int MAX_BUFFERED = 65536;
+
     private final DataOutputStream out; //Output stream to write to
+    private final OutputStream sink; //Stream buffered frames are flushed to
+    private final ByteArrayOutputStream buffer; //Reusable frame buffer (null if unbuffered)
+    private final FlushPolicy policy; //When buffered frames are flushed
+    private final int framesPerFlush; //Number of frames per flush for EVERY_N_FRAMES
+    private int pendingFrames; //Number of complete frames in the buffer
 
     /**
      * Construct a new output source from an OutputStream
@@ -26,6 +36,75 @@ public class MessageOutput {
             throw new NullPointerException("OutputStream is null");
         }
         this.out = new DataOutputStream(out);
+        this.sink = out;
+        this.buffer = null;
+        this.policy = null;
+        this.framesPerFlush = 1;
+    }
+
+    /**
+     * Construct a new buffered output source from an OutputStream. Frames are built in a reusable buffer and
+     * written to the stream with a single write according to the flush policy.
+     *
+     * @param out            byte output sink
+     * @param policy         flush policy
+     * @param framesPerFlush number of frames per flush (only used by EVERY_N_FRAMES)
+     * @throws NullPointerException     if out or policy is null
+     * @throws IllegalArgumentException if framesPerFlush is less than 1
+     */
+    public MessageOutput(OutputStream out, FlushPolicy policy, int framesPerFlush) throws NullPointerException {
+        if (out == null || policy == null) {
+            throw new NullPointerException("OutputStream or policy is null");
+        }
+        if (framesPerFlush < 1) {
+            throw new IllegalArgumentException("framesPerFlush must be positive");
+        }
+        this.sink = out;
+        this.buffer = new ByteArrayOutputStream(1024);
+        this.out = new DataOutputStream(buffer);
+        this.policy = policy;
+        this.framesPerFlush = policy == FlushPolicy.EVERY_N_FRAMES ? framesPerFlush : 1;
+    }
+
+    /**
+     * marks the end of a frame and flushes buffered frames if the flush policy requires it
+     *
+     * @throws IOException if writing fails
+     */
+
+    public void endFrame() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        pendingFrames++;
+        if ((policy != FlushPolicy.ON_IDLE && pendingFrames >= framesPerFlush) || buffer.size() >= MAX_BUFFERED) {
+            flush();
+        }
+    }
+
+    /**
+     * writes all buffered frames to the output stream and flushes it
+     *
+     * @throws IOException if writing fails
+     */
+
+    public void flush() throws IOException {
+        if (buffer != null && buffer.size() > 0) {
+            buffer.writeTo(sink);
+            buffer.reset();
+            pendingFrames = 0;
+        }
+        sink.flush();
+    }
+
+    /**
+     * get the number of complete frames waiting to be flushed
+     *
+     * @return number of buffered frames
+     */
+
+    public int getPendingFrames() {
+        return pendingFrames;
     }
 
     /**
@@ -63,11 +142,12 @@ public class MessageOutput {
      */
 
     public void writeString(String fileName) throws IOException{
+        byte[] bytes = new byte[fileName.length() + 1];
         for (int i = 0; i < fileName.length(); i++) {
-            char c = fileName.charAt(i);
-            out.write(c);
+            bytes[i] = (byte) fileName.charAt(i);
         }
-        out.write('\n');
+        bytes[fileName.length()] = '\n';
+        out.write(bytes);
     }
 
     /**
@@ -79,10 +159,11 @@ public class MessageOutput {
      */
 
     public void writeLengthString(String fileName, int length) throws IOException {
+        byte[] bytes = new byte[length];
         for (int i = 0; i < length; i++) {
-            char c = fileName.charAt(i);
-            out.write(c);
+            bytes[i] = (byte) fileName.charAt(i);
         }
+        out.write(bytes);
     }
 
     /**
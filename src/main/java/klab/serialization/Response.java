@@ -74,6 +74,7 @@ public class Response extends Message {
         for (Result result : resultList) {
             result.encode(out);
         }
+        out.endFrame();
     }
 
     /**
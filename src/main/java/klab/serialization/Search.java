@@ -45,6 +45,7 @@ public class Search extends Message {
         super.encode(out);
         out.writeShort(length);
         out.writeLengthString(searchString, length);
+        out.endFrame();
     }
 
     /**
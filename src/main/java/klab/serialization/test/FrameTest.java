@@ -0,0 +1,135 @@
+package klab.serialization.test;
+
+import klab.serialization.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameTest {
+    public static byte[] goodID = new byte[] { 0x01, 0x02, 0x03, 0x04, 0x05, 0x06,
+            0x07, 0x08, 0x09, 0x10, 0x11, 0x12, 0x13, 0x14, 0x15 };
+
+    Search search;
+    Response response;
+
+    @BeforeEach
+    public void setUp() throws BadAttributeValueException {
+        search = new Search(goodID, 4, RoutingService.DEPTHFIRST, "foo");
+        response = new Response(goodID, 3, RoutingService.BREADTHFIRST, new InetSocketAddress("1.2.3.4", 5678));
+        response.addResult(new Result(new byte[] { 1, 2, 3, 4 }, 500, "readme.txt"));
+    }
+
+    static byte[] encode(Message m) throws IOException {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        m.encode(new MessageOutput(bOut));
+        return bOut.toByteArray();
+    }
+
+    @Test
+    public void testMatchesEncode() throws IOException {
+        for (Message m : new Message[] { search, response }) {
+            Frame frame = Frame.of(m);
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+            frame.writeTo(new MessageOutput(bOut));
+            assertArrayEquals(encode(m), bOut.toByteArray());
+            assertEquals(encode(m).length, frame.size());
+            assertEquals(m.getMessageType(), frame.getMessageType());
+            assertEquals(m.getTTL(), frame.getTTL());
+        }
+    }
+
+    @Test
+    public void testWriteToEndsFrame() throws IOException {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        MessageOutput out = new MessageOutput(bOut, FlushPolicy.EVERY_N_FRAMES, 2);
+        Frame frame = Frame.of(search);
+        frame.writeTo(out);
+        assertEquals(1, out.getPendingFrames());
+        frame.writeTo(out);
+        assertArrayEquals(ByteBuffer.allocate(2 * frame.size()).put(encode(search)).put(encode(search)).array(),
+                bOut.toByteArray());
+    }
+
+    @Test
+    public void testByteBuffersAreIndependent() throws IOException {
+        Frame frame = Frame.of(response);
+        ByteBuffer b1 = frame.asByteBuffer();
+        ByteBuffer b2 = frame.asByteBuffer();
+        b1.get(new byte[5]);
+        assertEquals(frame.size(), b2.remaining());
+        assertTrue(b1.isReadOnly());
+    }
+
+    @Test
+    public void testNull() {
+        assertThrows(IOException.class, () -> Frame.of(null));
+    }
+
+    @Test
+    public void testWrapDecodesHeaderOnly() throws IOException, BadAttributeValueException {
+        byte[] enc = encode(response);
+        //corrupt the file name so that only a full decode can notice
+        enc[enc.length - 2] = '!';
+        Frame frame = Frame.wrap(enc);
+        assertEquals(2, frame.getMessageType());
+        assertArrayEquals(goodID, frame.getID());
+        assertEquals(3, frame.getTTL());
+        assertEquals(RoutingService.BREADTHFIRST, frame.getRoutingService());
+        assertEquals(response.getLength(), frame.getLength());
+        assertThrows(BadAttributeValueException.class, frame::getMessage);
+    }
+
+    @Test
+    public void testGetMessageCached() throws IOException, BadAttributeValueException {
+        Frame frame = Frame.wrap(encode(search));
+        Message m = frame.getMessage();
+        assertEquals(search, m);
+        assertSame(m, frame.getMessage());
+    }
+
+    @Test
+    public void testSetTTLPatchesBytes() throws IOException, BadAttributeValueException {
+        Frame frame = Frame.wrap(encode(search));
+        frame.setTTL(3);
+        assertEquals(3, frame.getTTL());
+        assertEquals(3, frame.getMessage().getTTL());
+        frame.setTTL(2);
+        assertEquals(2, frame.getMessage().getTTL());
+        search.setTTL(2);
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        frame.writeTo(new MessageOutput(bOut));
+        assertArrayEquals(encode(search), bOut.toByteArray());
+        assertThrows(BadAttributeValueException.class, () -> frame.setTTL(256));
+    }
+
+    @Test
+    public void testWrapBadHeader() throws IOException {
+        byte[] badType = encode(search);
+        badType[0] = 3;
+        assertThrows(BadAttributeValueException.class, () -> Frame.wrap(badType));
+        byte[] badRouting = encode(search);
+        badRouting[17] = 5;
+        assertThrows(BadAttributeValueException.class, () -> Frame.wrap(badRouting));
+        byte[] enc = encode(search);
+        assertThrows(BadAttributeValueException.class, () -> Frame.wrap(Arrays.copyOf(enc, enc.length - 1)));
+        assertThrows(BadAttributeValueException.class, () -> Frame.wrap(null));
+    }
+
+    @Test
+    public void testRead() throws IOException, BadAttributeValueException {
+        MessageInput in = new MessageInput(new ByteArrayInputStream(
+                ByteBuffer.allocate(200).put(encode(response)).put(encode(search)).flip().array(), 0,
+                encode(response).length + encode(search).length));
+        assertEquals(response, Frame.read(in).getMessage());
+        assertEquals(search, Frame.read(in).getMessage());
+        assertThrows(IOException.class, () -> Frame.read(in));
+    }
+}
@@ -0,0 +1,121 @@
+package klab.serialization.test;
+
+import klab.serialization.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageDecoderTest {
+    public static byte[] goodID = new byte[] { 0x01, 0x02, 0x03, 0x04, 0x05, 0x06,
+            0x07, 0x08, 0x09, 0x10, 0x11, 0x12, 0x13, 0x14, 0x15 };
+
+    MessageDecoder decoder;
+    Search search;
+    Response response;
+
+    @BeforeEach
+    public void setUp() throws BadAttributeValueException {
+        decoder = new MessageDecoder();
+        search = new Search(goodID, 4, RoutingService.DEPTHFIRST, "foo");
+        response = new Response(goodID, 3, RoutingService.BREADTHFIRST, new InetSocketAddress("1.2.3.4", 5678));
+        response.addResult(new Result(new byte[] { 1, 2, 3, 4 }, 500, "readme.txt"));
+        response.addResult(new Result(new byte[] { 5, 6, 7, 8 }, 105, "install.me"));
+    }
+
+    static byte[] encode(Message... messages) throws IOException {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        MessageOutput out = new MessageOutput(bOut);
+        for (Message m : messages) {
+            m.encode(out);
+        }
+        return bOut.toByteArray();
+    }
+
+    List<Message> feed(byte[] enc, int chunkSize) throws IOException, BadAttributeValueException {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < enc.length; i += chunkSize) {
+            ByteBuffer chunk = ByteBuffer.wrap(enc, i, Math.min(chunkSize, enc.length - i));
+            while (chunk.hasRemaining()) {
+                Message m = decoder.decode(chunk);
+                if (m != null) {
+                    messages.add(m);
+                }
+            }
+        }
+        return messages;
+    }
+
+    @Test
+    public void testByteAtATime() throws IOException, BadAttributeValueException {
+        byte[] enc = encode(search);
+        ByteBuffer chunk = ByteBuffer.allocate(1);
+        for (int i = 0; i < enc.length - 1; i++) {
+            chunk.clear();
+            chunk.put(enc[i]).flip();
+            assertNull(decoder.decode(chunk));
+            assertTrue(decoder.isPartial());
+        }
+        chunk.clear();
+        chunk.put(enc[enc.length - 1]).flip();
+        assertEquals(search, decoder.decode(chunk));
+        assertFalse(decoder.isPartial());
+    }
+
+    @Test
+    public void testSeveralMessagesInOneChunk() throws IOException, BadAttributeValueException {
+        assertEquals(List.of(search, response, search), feed(encode(search, response, search), 4096));
+    }
+
+    @Test
+    public void testMessagesAcrossChunks() throws IOException, BadAttributeValueException {
+        for (int size = 1; size < 30; size++) {
+            assertEquals(List.of(response, search, response), feed(encode(response, search, response), size));
+        }
+    }
+
+    @Test
+    public void testLeavesFollowingBytes() throws IOException, BadAttributeValueException {
+        ByteBuffer chunk = ByteBuffer.wrap(encode(search, response));
+        assertEquals(search, decoder.decode(chunk));
+        assertEquals(encode(response).length, chunk.remaining());
+        assertEquals(response, decoder.decode(chunk));
+    }
+
+    @Test
+    public void testEmptySearch() throws IOException, BadAttributeValueException {
+        Search empty = new Search(goodID, 4, RoutingService.DEPTHFIRST, "");
+        assertEquals(empty, decoder.decode(ByteBuffer.wrap(encode(empty))));
+    }
+
+    @Test
+    public void testBadTypeSkipped() throws IOException, BadAttributeValueException {
+        byte[] bad = encode(search);
+        bad[0] = 7;
+        ByteBuffer chunk = ByteBuffer.wrap(ByteBuffer.allocate(bad.length * 2).put(bad).put(encode(search)).array());
+        assertThrows(BadAttributeValueException.class, () -> decoder.decode(chunk));
+        assertFalse(decoder.isPartial());
+        assertEquals(search, decoder.decode(chunk));
+    }
+
+    @Test
+    public void testNullChunk() {
+        assertThrows(IOException.class, () -> decoder.decode(null));
+    }
+
+    @Test
+    public void testDecodeFrameSkipsPayloadValidation() throws IOException, BadAttributeValueException {
+        byte[] enc = encode(response);
+        enc[enc.length - 2] = '!';
+        Frame frame = decoder.decodeFrame(ByteBuffer.wrap(enc));
+        assertEquals(2, frame.getMessageType());
+        assertThrows(BadAttributeValueException.class, frame::getMessage);
+    }
+}
@@ -0,0 +1,145 @@
+package klab.serialization.test;
+
+import klab.serialization.BadAttributeValueException;
+import klab.serialization.MessageInput;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageInputTest {
+
+    /**
+     * Input stream returning at most one byte per read
+     */
+    static class TrickleInputStream extends ByteArrayInputStream {
+        TrickleInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testReadStrings() throws IOException {
+        MessageInput in = new MessageInput(new ByteArrayInputStream(ascii("foo\nreadme.txt\n\nabcdefghijklmnop\n")));
+        assertEquals("foo", in.readString());
+        assertEquals("readme.txt", in.readString());
+        assertEquals("", in.readString());
+        assertEquals("abcdefghijklmnop", in.readString());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testReadStringTrickle() throws IOException {
+        MessageInput in = new MessageInput(new TrickleInputStream(ascii("a1234567890b\nxyz\n")));
+        assertEquals("a1234567890b", in.readString());
+        assertEquals("xyz", in.readString());
+    }
+
+    @Test
+    public void testReadLongString() throws IOException {
+        String s = "x".repeat(50000);
+        MessageInput in = new MessageInput(new TrickleInputStream(ascii(s + "\n" + s + "\n")));
+        assertEquals(s, in.readString());
+        assertEquals(s, in.readString());
+    }
+
+    @Test
+    public void testDelimiterPositions() throws IOException {
+        Random random = new Random(1);
+        for (int n = 0; n < 2000; n++) {
+            byte[] b = new byte[1 + random.nextInt(40)];
+            for (int i = 0; i < b.length; i++) {
+                //mostly bytes close to the delimiter to exercise the word scan
+                b[i] = (byte) (random.nextBoolean() ? random.nextInt(256) : 9 + random.nextInt(3));
+            }
+            int first = -1;
+            for (int i = 0; i < b.length && first < 0; i++) {
+                if (b[i] == '\n') {
+                    first = i;
+                }
+            }
+            MessageInput in = new MessageInput(b, 0, b.length);
+            if (first < 0) {
+                assertThrows(IOException.class, in::readString);
+            } else {
+                assertEquals(new String(b, 0, first, StandardCharsets.US_ASCII), in.readString());
+                assertEquals(b.length - first - 1, in.size());
+            }
+        }
+    }
+
+    @Test
+    public void testReadStringPrematureEnd() throws IOException {
+        MessageInput in = new MessageInput(new ByteArrayInputStream(ascii("no delimiter")));
+        assertThrows(IOException.class, in::readString);
+    }
+
+    @Test
+    public void testReadLengthString() throws IOException, BadAttributeValueException {
+        MessageInput in = new MessageInput(new TrickleInputStream(ascii("foobar")));
+        assertEquals("foo", in.readLengthString(3));
+        assertEquals("", in.readLengthString(0));
+        assertThrows(IOException.class, () -> in.readLengthString(4));
+        assertThrows(BadAttributeValueException.class, () -> in.readLengthString(-1));
+    }
+
+    @Test
+    public void testReadNumbers() throws IOException {
+        byte[] enc = { 1, 2, 3, 4, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFE, (byte) 0x80, 1 };
+        MessageInput in = new MessageInput(new TrickleInputStream(enc));
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, in.read4bytes());
+        assertEquals(4294967294L, in.readUnsignedInt());
+        assertEquals(0x8001, in.readUnsignedShort());
+        assertThrows(IOException.class, in::readUnsignedShort);
+    }
+
+    @Test
+    public void testReadBytes() throws IOException {
+        byte[] enc = new byte[20000];
+        new Random(2).nextBytes(enc);
+        MessageInput in = new MessageInput(new ByteArrayInputStream(enc));
+        assertEquals(enc[0] & 0xFF, in.read());
+        byte[] b = in.readBytes(15000);
+        assertEquals(15000, b.length);
+        assertEquals(enc[15000], b[14999]);
+        assertEquals(4999, in.readBytes(6000).length);
+    }
+
+    @Test
+    public void testArraySource() throws IOException {
+        byte[] enc = ascii("xxfoo\nbar");
+        MessageInput in = new MessageInput(enc, 2, 6);
+        assertEquals("foo", in.readString());
+        assertEquals(2, in.size());
+        assertEquals('b', in.read());
+        assertEquals(1, in.readBytes(5).length);
+        assertEquals(-1, in.read());
+        assertThrows(IndexOutOfBoundsException.class, () -> new MessageInput(enc, 5, 6));
+        assertThrows(NullPointerException.class, () -> new MessageInput(null, 0, 0));
+        assertThrows(NullPointerException.class, () -> new MessageInput((InputStream) null));
+    }
+
+    @Test
+    public void testTransferTo() throws IOException {
+        MessageInput in = new MessageInput(new ByteArrayInputStream(ascii("OK\nfile contents")));
+        assertEquals("OK", in.readString());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(13, in.transferTo(out));
+        assertEquals("file contents", out.toString(StandardCharsets.US_ASCII));
+    }
+}
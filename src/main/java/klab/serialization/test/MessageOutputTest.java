@@ -0,0 +1,113 @@
+package klab.serialization.test;
+
+import klab.serialization.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageOutputTest {
+    public static byte[] goodID = new byte[] { 0x01, 0x02, 0x03, 0x04, 0x05, 0x06,
+            0x07, 0x08, 0x09, 0x10, 0x11, 0x12, 0x13, 0x14, 0x15 };
+
+    /**
+     * Output stream counting the write calls it receives
+     */
+    static class CountingOutputStream extends ByteArrayOutputStream {
+        int writes;
+
+        @Override
+        public synchronized void write(int b) {
+            writes++;
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+    }
+
+    CountingOutputStream sink;
+    Search search;
+    Response response;
+
+    @BeforeEach
+    public void setUp() throws BadAttributeValueException {
+        sink = new CountingOutputStream();
+        search = new Search(goodID, 4, RoutingService.DEPTHFIRST, "foo");
+        response = new Response(goodID, 3, RoutingService.BREADTHFIRST, new InetSocketAddress("1.2.3.4", 5678));
+        response.addResult(new Result(new byte[] { 1, 2, 3, 4 }, 500, "readme.txt"));
+    }
+
+    static byte[] unbuffered(Message... messages) throws IOException {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        MessageOutput out = new MessageOutput(bOut);
+        for (Message m : messages) {
+            m.encode(out);
+        }
+        return bOut.toByteArray();
+    }
+
+    @Test
+    public void testEveryFrame() throws IOException {
+        MessageOutput out = new MessageOutput(sink, FlushPolicy.EVERY_FRAME, 1);
+        search.encode(out);
+        assertEquals(1, sink.writes);
+        response.encode(out);
+        assertEquals(2, sink.writes);
+        assertArrayEquals(unbuffered(search, response), sink.toByteArray());
+    }
+
+    @Test
+    public void testEveryNFrames() throws IOException {
+        MessageOutput out = new MessageOutput(sink, FlushPolicy.EVERY_N_FRAMES, 3);
+        search.encode(out);
+        response.encode(out);
+        assertEquals(0, sink.writes);
+        assertEquals(2, out.getPendingFrames());
+        search.encode(out);
+        assertEquals(1, sink.writes);
+        assertEquals(0, out.getPendingFrames());
+        assertArrayEquals(unbuffered(search, response, search), sink.toByteArray());
+    }
+
+    @Test
+    public void testOnIdle() throws IOException {
+        MessageOutput out = new MessageOutput(sink, FlushPolicy.ON_IDLE, 1);
+        for (int i = 0; i < 10; i++) {
+            search.encode(out);
+        }
+        assertEquals(0, sink.size());
+        out.flush();
+        assertEquals(1, sink.writes);
+        assertEquals(10 * unbuffered(search).length, sink.size());
+    }
+
+    @Test
+    public void testUnbufferedWritesThrough() throws IOException {
+        MessageOutput out = new MessageOutput(sink);
+        search.encode(out);
+        assertArrayEquals(unbuffered(search), sink.toByteArray());
+    }
+
+    @Test
+    public void testWriteStringSingleWrite() throws IOException {
+        MessageOutput out = new MessageOutput(sink);
+        out.writeString("readme.txt");
+        assertEquals(1, sink.writes);
+        assertArrayEquals("readme.txt\n".getBytes(), sink.toByteArray());
+    }
+
+    @Test
+    public void testBadParams() {
+        assertThrows(NullPointerException.class, () -> new MessageOutput(sink, null, 1));
+        assertThrows(NullPointerException.class, () -> new MessageOutput(null, FlushPolicy.EVERY_FRAME, 1));
+        assertThrows(IllegalArgumentException.class, () -> new MessageOutput(sink, FlushPolicy.EVERY_N_FRAMES, 0));
+    }
+}